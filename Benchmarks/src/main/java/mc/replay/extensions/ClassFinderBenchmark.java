@@ -0,0 +1,176 @@
+package mc.replay.extensions;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ClassFinderBenchmark {
+
+    @Param({"1", "10", "60"})
+    private int loaders;
+
+    private SyntheticExtensions synthetic;
+    private JavaExtensionLoader loader;
+    private LegacyClassFinder legacyClassFinder;
+
+    private JavaExtensionClassLoader requester;
+    private String hit;
+    private String miss;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        // One extra extension acts as the requester, so it never owns the looked up classes itself
+        this.synthetic = SyntheticExtensions.generate(this.loaders + 1, 20, 2, 0);
+
+        this.loader = new JavaExtensionLoader(this.synthetic.getFolder());
+        this.loader.setDescriptorCacheEnabled(false);
+        this.loader.loadExtensions();
+        this.legacyClassFinder = new LegacyClassFinder(this.loader);
+
+        this.requester = this.loader.getLoadersByName().get(this.synthetic.getExtensionName(0));
+        this.hit = this.synthetic.getClassName(this.loaders, 0);
+        this.miss = this.synthetic.getClassName(this.loaders, 0) + "Missing";
+
+        // Only measure lookups of classes that are already defined
+        this.loader.getLoadersByName().get(this.synthetic.getExtensionName(this.loaders)).loadClass(this.hit);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        this.loader.unloadExtensions();
+        this.synthetic.delete();
+    }
+
+    @Benchmark
+    public Class<?> indexedHit() {
+        return this.loader.classFinder.getClassByName(this.hit, false, this.requester);
+    }
+
+    @Benchmark
+    public Class<?> indexedMiss() {
+        return this.loader.classFinder.getClassByName(this.miss, false, this.requester);
+    }
+
+    @Benchmark
+    public Class<?> linearScanHit() {
+        return this.legacyClassFinder.getClassByName(this.hit, false, this.requester);
+    }
+
+    @Benchmark
+    public Class<?> linearScanMiss() {
+        return this.legacyClassFinder.getClassByName(this.miss, false, this.requester);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Class<?> indexedHitContended() {
+        return this.loader.classFinder.getClassByName(this.hit, false, this.requester);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Class<?> linearScanHitContended() {
+        return this.legacyClassFinder.getClassByName(this.hit, false, this.requester);
+    }
+
+    // Every invocation races the threads to define the same names on a fresh loader, so the per-name lock is actually
+    // contended instead of returning through the already loaded fast path
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int indexedDefineContended(ContendedDefine state) throws Exception {
+        return state.race((name) -> state.loader.classFinder.getClassByName(name, false, state.requester));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int linearScanDefineContended(ContendedDefine state) throws Exception {
+        return state.race((name) -> state.legacyClassFinder.getClassByName(name, false, state.requester));
+    }
+
+    @State(Scope.Benchmark)
+    public static class ContendedDefine {
+
+        private static final int THREADS = 8;
+
+        private SyntheticExtensions synthetic;
+        private List<String> classNames;
+        private ExecutorService executor;
+
+        private JavaExtensionLoader loader;
+        private LegacyClassFinder legacyClassFinder;
+        private JavaExtensionClassLoader requester;
+
+        @Setup(Level.Trial)
+        public void generate() throws Exception {
+            this.synthetic = SyntheticExtensions.generate(2, 100, 4, 0);
+            this.classNames = this.synthetic.getClassNames(1);
+            this.executor = Executors.newFixedThreadPool(THREADS);
+        }
+
+        // Classes can only be defined once per loader, every invocation starts from a fresh one
+        @Setup(Level.Invocation)
+        public void load() throws Exception {
+            this.loader = new JavaExtensionLoader(this.synthetic.getFolder());
+            this.loader.setDescriptorCacheEnabled(false);
+            this.loader.loadExtensions();
+            this.legacyClassFinder = new LegacyClassFinder(this.loader);
+            this.requester = this.loader.getLoadersByName().get(this.synthetic.getExtensionName(0));
+        }
+
+        @TearDown(Level.Invocation)
+        public void unload() throws Exception {
+            this.loader.unloadExtensions();
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws Exception {
+            this.executor.shutdownNow();
+            this.synthetic.delete();
+        }
+
+        int race(Lookup lookup) throws Exception {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> futures = new ArrayList<>(THREADS);
+
+            for (int thread = 0; thread < THREADS; thread++) {
+                futures.add(this.executor.submit(() -> {
+                    start.await();
+
+                    // Same order on every thread, so they all wait on the same name at the same time
+                    int found = 0;
+                    for (String className : this.classNames) {
+                        if (lookup.find(className) != null) found++;
+                    }
+
+                    return found;
+                }));
+            }
+
+            start.countDown();
+
+            int found = 0;
+            for (Future<Integer> future : futures) {
+                found += future.get();
+            }
+
+            if (found != THREADS * this.classNames.size()) {
+                throw new IllegalStateException("Only %d of %d lookups found a class".formatted(found, THREADS * this.classNames.size()));
+            }
+
+            return found;
+        }
+    }
+
+    @FunctionalInterface
+    interface Lookup {
+        Class<?> find(String name);
+    }
+}
@@ -0,0 +1,56 @@
+package mc.replay.extensions;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class FindClassBenchmark {
+
+    @Param({"200", "1000"})
+    private int classes;
+
+    private SyntheticExtensions synthetic;
+    private List<String> classNames;
+
+    private JavaExtensionLoader loader;
+    private JavaExtensionClassLoader classLoader;
+
+    @Setup(Level.Trial)
+    public void generate() throws Exception {
+        this.synthetic = SyntheticExtensions.generate(1, this.classes, 8, 0);
+        this.classNames = this.synthetic.getClassNames(0);
+    }
+
+    // Classes can only be defined once per loader, every invocation starts from a fresh one
+    @Setup(Level.Invocation)
+    public void load() throws Exception {
+        this.loader = new JavaExtensionLoader(this.synthetic.getFolder());
+        this.loader.loadExtensions();
+        this.classLoader = this.loader.getLoadersByName().get(this.synthetic.getExtensionName(0));
+    }
+
+    @TearDown(Level.Invocation)
+    public void unload() throws Exception {
+        this.loader.unloadExtensions();
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws Exception {
+        this.synthetic.delete();
+    }
+
+    @Benchmark
+    public void defineAllClasses(Blackhole blackhole) throws Exception {
+        for (String className : this.classNames) {
+            blackhole.consume(this.classLoader.findClass(className));
+        }
+    }
+}
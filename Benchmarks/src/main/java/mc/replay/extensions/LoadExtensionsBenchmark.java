@@ -0,0 +1,60 @@
+package mc.replay.extensions;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LoadExtensionsBenchmark {
+
+    @Param({"10", "60"})
+    private int extensions;
+
+    @Param({"50"})
+    private int classes;
+
+    @Param({"4"})
+    private int packages;
+
+    @Param({"2"})
+    private int fanOut;
+
+    @Param({"true", "false"})
+    private boolean descriptorCache;
+
+    private SyntheticExtensions synthetic;
+    private JavaExtensionLoader loader;
+
+    @Setup(Level.Trial)
+    public void generate() throws Exception {
+        this.synthetic = SyntheticExtensions.generate(this.extensions, this.classes, this.packages, this.fanOut);
+    }
+
+    @Setup(Level.Invocation)
+    public void createLoader() {
+        this.loader = new JavaExtensionLoader(this.synthetic.getFolder());
+        this.loader.setDescriptorCacheEnabled(this.descriptorCache);
+    }
+
+    @TearDown(Level.Invocation)
+    public void unload() throws Exception {
+        this.loader.unloadExtensions();
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws Exception {
+        this.synthetic.delete();
+    }
+
+    @Benchmark
+    public Collection<JavaExtension> loadExtensions() throws Exception {
+        this.loader.loadExtensions();
+        return this.loader.getExtensions();
+    }
+}
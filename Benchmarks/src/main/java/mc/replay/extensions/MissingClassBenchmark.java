@@ -0,0 +1,70 @@
+package mc.replay.extensions;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Optional dependency checks, Class.forName on a name that no extension and no parent provides
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MissingClassBenchmark {
+
+    @Param({"10", "60"})
+    private int extensions;
+
+    // 0 disables the negative cache
+    @Param({"0", "4096"})
+    private int cacheSize;
+
+    private SyntheticExtensions synthetic;
+    private JavaExtensionLoader loader;
+    private JavaExtensionClassLoader requester;
+
+    private String missingInExtensionPackage;
+    private String missingElsewhere;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.synthetic = SyntheticExtensions.generate(this.extensions, 20, 4, 0);
+
+        this.loader = new JavaExtensionLoader(this.synthetic.getFolder());
+        this.loader.setNegativeCacheSize(this.cacheSize);
+        this.loader.loadExtensions();
+
+        this.requester = this.loader.getLoadersByName().get(this.synthetic.getExtensionName(0));
+
+        // Same package as a class of the last extension, so the lookup reaches that extension's loader
+        String className = this.synthetic.getClassName(this.extensions - 1, 0);
+        this.missingInExtensionPackage = className + "Missing";
+        this.missingElsewhere = "com.example.optional.Integration";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.loader.unloadExtensions();
+        this.synthetic.delete();
+    }
+
+    @Benchmark
+    public boolean missingInExtensionPackage() {
+        return this.isPresent(this.missingInExtensionPackage);
+    }
+
+    @Benchmark
+    public boolean missingElsewhere() {
+        return this.isPresent(this.missingElsewhere);
+    }
+
+    private boolean isPresent(String className) {
+        try {
+            Class.forName(className, false, this.requester);
+            return true;
+        } catch (ClassNotFoundException exception) {
+            return false;
+        }
+    }
+}
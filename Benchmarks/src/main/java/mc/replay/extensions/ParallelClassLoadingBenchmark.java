@@ -0,0 +1,97 @@
+package mc.replay.extensions;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// Every thread loads all classes of one extension starting at a different offset, so threads both race for the same
+// names and define different classes side by side. Also checks that every class ends up defined exactly once.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class ParallelClassLoadingBenchmark {
+
+    @Param({"1000"})
+    private int classes;
+
+    @Param({"1", "2", "4", "8"})
+    private int threads;
+
+    private SyntheticExtensions synthetic;
+    private List<String> classNames;
+    private ExecutorService executor;
+
+    private JavaExtensionLoader loader;
+    private JavaExtensionClassLoader classLoader;
+
+    @Setup(Level.Trial)
+    public void generate() throws Exception {
+        this.synthetic = SyntheticExtensions.generate(1, this.classes, 8, 0);
+        this.classNames = this.synthetic.getClassNames(0);
+        this.executor = Executors.newFixedThreadPool(this.threads);
+    }
+
+    // Classes can only be defined once per loader, every invocation starts from a fresh one
+    @Setup(Level.Invocation)
+    public void load() throws Exception {
+        this.loader = new JavaExtensionLoader(this.synthetic.getFolder());
+        this.loader.loadExtensions();
+        this.classLoader = this.loader.getLoadersByName().get(this.synthetic.getExtensionName(0));
+    }
+
+    @TearDown(Level.Invocation)
+    public void unload() throws Exception {
+        this.loader.unloadExtensions();
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws Exception {
+        this.executor.shutdownNow();
+        this.synthetic.delete();
+    }
+
+    @Benchmark
+    public Map<String, Class<?>> loadAllClasses() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Map<String, Class<?>>>> futures = new ArrayList<>(this.threads);
+
+        for (int thread = 0; thread < this.threads; thread++) {
+            int offset = thread * this.classNames.size() / this.threads;
+
+            futures.add(this.executor.submit(() -> {
+                Map<String, Class<?>> loaded = new HashMap<>();
+                start.await();
+
+                for (int i = 0; i < this.classNames.size(); i++) {
+                    String className = this.classNames.get((offset + i) % this.classNames.size());
+                    loaded.put(className, Class.forName(className, false, this.classLoader));
+                }
+
+                return loaded;
+            }));
+        }
+
+        start.countDown();
+
+        Map<String, Class<?>> result = null;
+        for (Future<Map<String, Class<?>>> future : futures) {
+            Map<String, Class<?>> loaded = future.get();
+            if (result == null) {
+                result = loaded;
+                continue;
+            }
+
+            for (Map.Entry<String, Class<?>> entry : loaded.entrySet()) {
+                if (result.get(entry.getKey()) != entry.getValue()) {
+                    throw new IllegalStateException("Class '%s' was defined more than once".formatted(entry.getKey()));
+                }
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,52 @@
+package mc.replay.extensions;
+
+import mc.replay.extensions.profiler.MethodProfilerTransformer;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+// Cost of MethodProfilerTransformer's probes on a small method called through reflection
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ProfilerBenchmark {
+
+    @Param({"false", "true"})
+    private boolean profiled;
+
+    private SyntheticExtensions synthetic;
+    private JavaExtensionLoader loader;
+
+    private Object instance;
+    private Method compute;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.synthetic = SyntheticExtensions.generate(1, 1, 1, 0);
+
+        this.loader = new JavaExtensionLoader(this.synthetic.getFolder());
+        if (this.profiled) this.loader.addClassTransformer(new MethodProfilerTransformer());
+        this.loader.loadExtensions();
+
+        JavaExtensionClassLoader classLoader = this.loader.getLoadersByName().get(this.synthetic.getExtensionName(0));
+        Class<?> clazz = Class.forName(this.synthetic.getClassName(0, 0), true, classLoader);
+
+        this.instance = clazz.getConstructor(int.class).newInstance(7);
+        this.compute = clazz.getMethod("compute", int.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.loader.unloadExtensions();
+        this.synthetic.delete();
+    }
+
+    @Benchmark
+    public Object compute() throws Exception {
+        return this.compute.invoke(this.instance, 16);
+    }
+}
@@ -0,0 +1,62 @@
+package mc.replay.extensions;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RegistryBenchmark {
+
+    @Param({"10", "60"})
+    private int extensions;
+
+    private SyntheticExtensions synthetic;
+    private JavaExtensionLoader loader;
+    private String name;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.synthetic = SyntheticExtensions.generate(this.extensions, 1, 1, 0);
+
+        this.loader = new JavaExtensionLoader(this.synthetic.getFolder());
+        this.loader.loadExtensions();
+        this.name = this.synthetic.getExtensionName(this.extensions / 2);
+
+        this.loader.registerService(CharSequence.class, this.name);
+        this.loader.registerService(CharSequence.class, "fallback", -1, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        this.loader.unloadExtensions();
+        this.synthetic.delete();
+    }
+
+    @Benchmark
+    public Collection<JavaExtension> getExtensions() {
+        return this.loader.getExtensions();
+    }
+
+    // What getExtensions() did before the registry kept snapshots
+    @Benchmark
+    public Collection<JavaExtension> getExtensionsCopy() {
+        return new TreeSet<>(this.loader.getLoaders().stream().map(JavaExtensionClassLoader::getExtension).toList());
+    }
+
+    @Benchmark
+    public JavaExtension getExtensionByName() {
+        return this.loader.getExtensionByName(this.name);
+    }
+
+    @Benchmark
+    public CharSequence getService() {
+        return this.loader.getService(CharSequence.class);
+    }
+}
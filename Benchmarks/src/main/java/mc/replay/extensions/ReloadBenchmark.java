@@ -0,0 +1,63 @@
+package mc.replay.extensions;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ReloadBenchmark {
+
+    @Param({"10", "60"})
+    private int extensions;
+
+    @Param({"50"})
+    private int classes;
+
+    private SyntheticExtensions synthetic;
+    private JavaExtensionLoader loader;
+
+    private String root;
+    private String leaf;
+    private File leafJar;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.synthetic = SyntheticExtensions.generate(this.extensions, this.classes, 4, 1);
+
+        this.loader = new JavaExtensionLoader(this.synthetic.getFolder());
+        this.loader.loadExtensions();
+
+        // With a fan-out of one every extension depends on the previous one, reloading the first reloads the whole chain
+        this.root = this.synthetic.getExtensionName(0);
+        this.leaf = this.synthetic.getExtensionName(this.extensions - 1);
+        this.leafJar = this.synthetic.getJar(this.extensions - 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        this.loader.unloadExtensions();
+        this.synthetic.delete();
+    }
+
+    @Benchmark
+    public void unloadAndLoadLeaf() throws Exception {
+        this.loader.unloadExtension(this.leaf);
+        this.loader.loadExtension(this.leafJar);
+    }
+
+    @Benchmark
+    public void reloadLeaf() throws Exception {
+        this.loader.reloadExtension(this.leaf);
+    }
+
+    @Benchmark
+    public void reloadRoot() throws Exception {
+        this.loader.reloadExtension(this.root);
+    }
+}
@@ -0,0 +1,71 @@
+package mc.replay.extensions;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.TimeUnit;
+
+// Reading a resource through the extension loader's entry index, against a plain URLClassLoader on the same jar
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ResourceBenchmark {
+
+    @Param({"small", "large", "missing"})
+    private String resource;
+
+    private SyntheticExtensions synthetic;
+    private JavaExtensionLoader loader;
+    private JavaExtensionClassLoader classLoader;
+    private URLClassLoader urlClassLoader;
+
+    private String name;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.synthetic = SyntheticExtensions.generate(1, 20, 4, 0, 100);
+
+        this.loader = new JavaExtensionLoader(this.synthetic.getFolder());
+        this.loader.loadExtensions();
+
+        this.classLoader = this.loader.getLoadersByName().get(this.synthetic.getExtensionName(0));
+        this.urlClassLoader = new URLClassLoader(new URL[]{this.synthetic.getJar(0).toURI().toURL()}, this.classLoader.getParent());
+
+        this.name = switch (this.resource) {
+            case "small" -> this.synthetic.getResourceName(0, 0);
+            case "large" -> this.synthetic.getResourceName(0, 9);
+            default -> "assets/e0/missing.txt";
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.urlClassLoader.close();
+        this.loader.unloadExtensions();
+        this.synthetic.delete();
+    }
+
+    @Benchmark
+    public int indexed() throws IOException {
+        return read(this.classLoader.getResourceAsStream(this.name));
+    }
+
+    @Benchmark
+    public int url() throws IOException {
+        return read(this.urlClassLoader.getResourceAsStream(this.name));
+    }
+
+    private static int read(InputStream in) throws IOException {
+        if (in == null) return -1;
+
+        try (in) {
+            return in.readAllBytes().length;
+        }
+    }
+}
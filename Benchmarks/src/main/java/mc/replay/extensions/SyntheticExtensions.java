@@ -0,0 +1,229 @@
+package mc.replay.extensions;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+final class SyntheticExtensions {
+
+    private final int extensions;
+    private final int classes;
+    private final int packages;
+    private final int fanOut;
+    private final int resources;
+
+    private final Path root;
+    private final File folder;
+
+    private SyntheticExtensions(int extensions, int classes, int packages, int fanOut, int resources) throws IOException {
+        this.extensions = extensions;
+        this.classes = classes;
+        this.packages = Math.max(1, packages);
+        this.fanOut = fanOut;
+        this.resources = resources;
+
+        this.root = Files.createTempDirectory("synthetic-extensions");
+        this.folder = this.root.resolve("extensions").toFile();
+    }
+
+    // Every extension i depends on the fanOut extensions before it and touches one of their classes in its static initializer
+    static @NotNull SyntheticExtensions generate(int extensions, int classes, int packages, int fanOut) throws IOException {
+        return generate(extensions, classes, packages, fanOut, 0);
+    }
+
+    // Resource i is 1 KiB, except every tenth which is 256 KiB
+    static @NotNull SyntheticExtensions generate(int extensions, int classes, int packages, int fanOut, int resources) throws IOException {
+        SyntheticExtensions synthetic = new SyntheticExtensions(extensions, classes, packages, fanOut, resources);
+        synthetic.generate();
+        return synthetic;
+    }
+
+    @NotNull File getFolder() {
+        return this.folder;
+    }
+
+    @NotNull String getExtensionName(int extension) {
+        return "Synthetic" + extension;
+    }
+
+    @NotNull File getJar(int extension) {
+        return new File(this.folder, "synthetic-" + extension + ".jar");
+    }
+
+    @NotNull String getClassName(int extension, int index) {
+        return "synthetic.e%d.p%d.C%d".formatted(extension, index % this.packages, index);
+    }
+
+    @NotNull List<String> getClassNames(int extension) {
+        List<String> classNames = new ArrayList<>(this.classes);
+        for (int i = 0; i < this.classes; i++) {
+            classNames.add(this.getClassName(extension, i));
+        }
+
+        return classNames;
+    }
+
+    @NotNull String getResourceName(int extension, int index) {
+        return "assets/e%d/resource-%d.txt".formatted(extension, index);
+    }
+
+    int getResourceSize(int index) {
+        return (index % 10 == 9) ? 256 * 1024 : 1024;
+    }
+
+    int getExtensions() {
+        return this.extensions;
+    }
+
+    int getClasses() {
+        return this.classes;
+    }
+
+    void delete() throws IOException {
+        try (Stream<Path> paths = Files.walk(this.root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private void generate() throws IOException {
+        Path sources = this.root.resolve("sources");
+        Path output = this.root.resolve("classes");
+        Files.createDirectories(output);
+        Files.createDirectories(this.folder.toPath());
+
+        List<String> files = new ArrayList<>();
+        for (int extension = 0; extension < this.extensions; extension++) {
+            files.add(this.write(sources, "synthetic.e%d.Main".formatted(extension), this.mainSource(extension)));
+
+            for (int index = 0; index < this.classes; index++) {
+                files.add(this.write(sources, this.getClassName(extension, index), this.classSource(extension, index)));
+            }
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("Generating synthetic extensions requires a JDK");
+        }
+
+        List<String> arguments = new ArrayList<>(List.of("-nowarn", "-cp", System.getProperty("java.class.path"), "-d", output.toString()));
+        arguments.addAll(files);
+
+        if (compiler.run(null, null, null, arguments.toArray(String[]::new)) != 0) {
+            throw new IllegalStateException("Could not compile synthetic extensions");
+        }
+
+        for (int extension = 0; extension < this.extensions; extension++) {
+            this.writeJar(output, extension);
+        }
+    }
+
+    private String mainSource(int extension) {
+        StringBuilder initializer = new StringBuilder();
+        for (int dependency = Math.max(0, extension - this.fanOut); dependency < extension; dependency++) {
+            initializer.append("        VALUE += ").append(this.getClassName(dependency, 0)).append(".value();\n");
+        }
+
+        return """
+                package synthetic.e%d;
+
+                public final class Main extends mc.replay.extensions.JavaExtension {
+
+                    public static int VALUE;
+
+                    static {
+                %s    }
+                }
+                """.formatted(extension, initializer);
+    }
+
+    private String classSource(int extension, int index) {
+        String className = this.getClassName(extension, index);
+        int dot = className.lastIndexOf('.');
+
+        return """
+                package %s;
+
+                public final class %s {
+
+                    private final int seed;
+
+                    public %s(int seed) {
+                        this.seed = seed;
+                    }
+
+                    public static int value() {
+                        return %d;
+                    }
+
+                    public int compute(int count) {
+                        int result = this.seed;
+                        for (int i = 0; i < count; i++) {
+                            result = result * 31 + i;
+                        }
+
+                        return result;
+                    }
+                }
+                """.formatted(className.substring(0, dot), className.substring(dot + 1), className.substring(dot + 1), extension * 1000 + index);
+    }
+
+    private String write(Path sources, String className, String source) throws IOException {
+        Path file = sources.resolve(className.replace('.', '/') + ".java");
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, source);
+        return file.toString();
+    }
+
+    private void writeJar(Path output, int extension) throws IOException {
+        StringBuilder config = new StringBuilder()
+                .append("main: synthetic.e").append(extension).append(".Main\n")
+                .append("name: ").append(this.getExtensionName(extension)).append('\n')
+                .append("version: '1.0'\n")
+                .append("depends: [");
+
+        for (int dependency = Math.max(0, extension - this.fanOut); dependency < extension; dependency++) {
+            if (dependency != Math.max(0, extension - this.fanOut)) config.append(", ");
+            config.append(this.getExtensionName(dependency));
+        }
+
+        config.append("]\n");
+
+        Path classes = output.resolve("synthetic/e" + extension);
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(this.getJar(extension).toPath()));
+             Stream<Path> paths = Files.walk(classes)) {
+            out.putNextEntry(new JarEntry("extension.yml"));
+            out.write(config.toString().getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+
+            for (Path path : paths.filter(Files::isRegularFile).sorted().toList()) {
+                out.putNextEntry(new JarEntry(output.relativize(path).toString().replace(File.separatorChar, '/')));
+                Files.copy(path, out);
+                out.closeEntry();
+            }
+
+            for (int index = 0; index < this.resources; index++) {
+                byte[] content = new byte[this.getResourceSize(index)];
+                Arrays.fill(content, (byte) ('a' + index % 26));
+
+                out.putNextEntry(new JarEntry(this.getResourceName(extension, index)));
+                out.write(content);
+                out.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package mc.replay.extensions;
+
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+enum ConfigValueType {
+
+    STRING(String.class) {
+        @Override
+        Object convert(Object value) {
+            if (value instanceof String || value instanceof Number || value instanceof Boolean) {
+                return value.toString();
+            }
+
+            return null;
+        }
+    },
+    INT(Integer.class) {
+        @Override
+        Object convert(Object value) {
+            Long longValue = toLong(value);
+            return (longValue != null && longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE) ? longValue.intValue() : null;
+        }
+    },
+    LONG(Long.class) {
+        @Override
+        Object convert(Object value) {
+            return toLong(value);
+        }
+    },
+    DOUBLE(Double.class) {
+        @Override
+        Object convert(Object value) {
+            if (value instanceof Number number) return number.doubleValue();
+
+            if (value instanceof String string) {
+                try {
+                    return Double.parseDouble(string.trim());
+                } catch (NumberFormatException exception) {
+                    return null;
+                }
+            }
+
+            return null;
+        }
+    },
+    BOOLEAN(Boolean.class) {
+        @Override
+        Object convert(Object value) {
+            if (value instanceof Boolean) return value;
+
+            if (value instanceof String string) {
+                if (string.equalsIgnoreCase("true")) return true;
+                if (string.equalsIgnoreCase("false")) return false;
+            }
+
+            return null;
+        }
+    },
+    DURATION(Duration.class) {
+        @Override
+        Object convert(Object value) {
+            // Plain numbers are milliseconds
+            if (value instanceof Number) {
+                Long millis = toLong(value);
+                return (millis != null) ? Duration.ofMillis(millis) : null;
+            }
+
+            if (value instanceof String string) {
+                return parseDuration(string.trim());
+            }
+
+            return null;
+        }
+    },
+    LIST(List.class) {
+        @Override
+        Object convert(Object value) {
+            if (value instanceof List<?> list) {
+                List<String> strings = new ArrayList<>(list.size());
+                for (Object element : list) {
+                    Object string = STRING.convert(element);
+                    if (string == null) return null;
+
+                    strings.add((String) string);
+                }
+
+                return List.copyOf(strings);
+            }
+
+            Object string = STRING.convert(value);
+            return (string != null) ? List.of((String) string) : null;
+        }
+    },
+    SECTION(ExtensionConfig.class) {
+        @Override
+        @SuppressWarnings("unchecked")
+        Object convert(Object value) {
+            if (!(value instanceof Map<?, ?> map)) return null;
+
+            return new ExtensionConfig((Map<String, Object>) map, true);
+        }
+    };
+
+    private final Class<?> type;
+
+    ConfigValueType(Class<?> type) {
+        this.type = type;
+    }
+
+    Class<?> getType() {
+        return this.type;
+    }
+
+    // Returns null when the value can't be represented as this type
+    abstract Object convert(Object value);
+
+    static ConfigValueType byName(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException exception) {
+            return null;
+        }
+    }
+
+    private static Long toLong(Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+
+        if (value instanceof Number number) {
+            double doubleValue = number.doubleValue();
+            return (doubleValue == Math.rint(doubleValue) && doubleValue >= Long.MIN_VALUE && doubleValue <= Long.MAX_VALUE) ? (long) doubleValue : null;
+        }
+
+        if (value instanceof String string) {
+            try {
+                return Long.parseLong(string.trim());
+            } catch (NumberFormatException exception) {
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    private static Duration parseDuration(String value) {
+        if (value.isEmpty()) return null;
+
+        if (value.startsWith("P") || value.startsWith("p")) {
+            try {
+                return Duration.parse(value);
+            } catch (DateTimeParseException exception) {
+                return null;
+            }
+        }
+
+        int unitStart = 0;
+        while (unitStart < value.length() && (Character.isDigit(value.charAt(unitStart)) || value.charAt(unitStart) == '-')) {
+            unitStart++;
+        }
+
+        long amount;
+        try {
+            amount = Long.parseLong(value.substring(0, unitStart));
+        } catch (NumberFormatException exception) {
+            return null;
+        }
+
+        return switch (value.substring(unitStart).trim().toLowerCase(Locale.ROOT)) {
+            case "", "ms" -> Duration.ofMillis(amount);
+            case "s" -> Duration.ofSeconds(amount);
+            case "m" -> Duration.ofMinutes(amount);
+            case "h" -> Duration.ofHours(amount);
+            case "d" -> Duration.ofDays(amount);
+            default -> null;
+        };
+    }
+}
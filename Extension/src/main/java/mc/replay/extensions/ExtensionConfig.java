@@ -1,28 +1,101 @@
 package mc.replay.extensions;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.UnknownNullability;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class ExtensionConfig {
 
+    private static final String SCHEMA_KEY = "schema";
+
     private final String main;
     private final String name;
     private final String version;
     private final List<String> depends;
+    private final boolean lazy;
+    private final List<String> preload;
+    private final List<String> libraries;
+    private final List<String> exports;
+    private final List<String> imports;
+    private final Duration enableTimeout;
+    private final Duration disableTimeout;
+    private final Integer threads;
+    private final boolean virtualThreads;
 
     private final Map<String, Object> data;
+    // Converted values per type, a key read as two types keeps both conversions
+    private final Map<ConfigValueType, Map<String, Object>> values = new EnumMap<>(ConfigValueType.class);
 
     ExtensionConfig(Map<String, Object> data) {
-        this.data = data;
+        this(data, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    ExtensionConfig(Map<String, Object> data, boolean section) {
+        this.data = (data != null) ? data : Map.of();
+
+        // Filled once, only the inner maps are written to afterwards
+        for (ConfigValueType type : ConfigValueType.values()) {
+            this.values.put(type, new ConcurrentHashMap<>());
+        }
+
+        if (section) {
+            this.main = null;
+            this.name = null;
+            this.version = null;
+            this.depends = List.of();
+            this.lazy = false;
+            this.preload = List.of();
+            this.libraries = List.of();
+            this.exports = null;
+            this.imports = null;
+            this.enableTimeout = null;
+            this.disableTimeout = null;
+            this.threads = null;
+            this.virtualThreads = false;
+        } else {
+            this.main = (String) this.convert("main", ConfigValueType.STRING);
+            this.name = (String) this.convert("name", ConfigValueType.STRING);
+            this.version = (String) this.convert("version", ConfigValueType.STRING);
+
+            List<String> depends = (List<String>) this.convert("depends", ConfigValueType.LIST);
+            this.depends = (depends != null) ? depends : List.of();
+
+            Object lazy = this.convert("lazy", ConfigValueType.BOOLEAN);
+            this.lazy = lazy != null && (boolean) lazy;
+
+            // Either 'all' or a list of package globs
+            List<String> preload = (this.data.get("preload") instanceof List) ? (List<String>) this.convert("preload", ConfigValueType.LIST) : null;
+            if (preload == null) {
+                String all = (String) this.convert("preload", ConfigValueType.STRING);
+                preload = (all != null) ? List.of(all) : List.of();
+            }
+            this.preload = preload;
+
+            List<String> libraries = (List<String>) this.convert("libraries", ConfigValueType.LIST);
+            this.libraries = (libraries != null) ? libraries : List.of();
 
-        this.main = this.load("main", null);
-        this.name = this.load("name", null);
-        this.version = this.load("version", null);
-        this.depends = this.load("depends", new ArrayList<>());
+            // Left out means unrestricted, an empty list means nothing
+            this.exports = (List<String>) this.convert("exports", ConfigValueType.LIST);
+            this.imports = (List<String>) this.convert("imports", ConfigValueType.LIST);
+
+            // The keys the loader reads on every enable, disable and load are resolved once here
+            this.enableTimeout = (Duration) this.convert("enable-timeout", ConfigValueType.DURATION);
+            this.disableTimeout = (Duration) this.convert("disable-timeout", ConfigValueType.DURATION);
+            this.threads = (Integer) this.convert("threads", ConfigValueType.INT);
+
+            Object virtualThreads = this.convert("virtual-threads", ConfigValueType.BOOLEAN);
+            this.virtualThreads = virtualThreads != null && (boolean) virtualThreads;
+        }
+
+        // Everything declared in the schema is converted up front, lookups afterwards are a single map read
+        for (Map.Entry<String, ConfigValueType> entry : this.getSchema().entrySet()) {
+            if (entry.getValue() != null) this.convert(entry.getKey(), entry.getValue());
+        }
     }
 
     public String getMain() {
@@ -41,10 +114,182 @@ public final class ExtensionConfig {
         return this.depends;
     }
 
+    public boolean isLazy() {
+        return this.lazy;
+    }
+
+    public List<String> getPreload() {
+        return this.preload;
+    }
+
+    public List<String> getLibraries() {
+        return this.libraries;
+    }
+
+    public @Nullable List<String> getExports() {
+        return this.exports;
+    }
+
+    public @Nullable List<String> getImports() {
+        return this.imports;
+    }
+
+    // Null if not set, the loader's default applies
+    public @Nullable Duration getEnableTimeout() {
+        return this.enableTimeout;
+    }
+
+    public @Nullable Duration getDisableTimeout() {
+        return this.disableTimeout;
+    }
+
+    public @Nullable Integer getThreads() {
+        return this.threads;
+    }
+
+    public boolean isVirtualThreads() {
+        return this.virtualThreads;
+    }
+
+    Map<String, Object> getData() {
+        return this.data;
+    }
+
     public <T> T get(@NotNull String key, @UnknownNullability T defaultValue) {
         return this.load(key, defaultValue);
     }
 
+    public @UnknownNullability String getString(@NotNull String key, @UnknownNullability String defaultValue) {
+        Object value = this.getTyped(key, ConfigValueType.STRING);
+        return (value != null) ? (String) value : defaultValue;
+    }
+
+    public int getInt(@NotNull String key, int defaultValue) {
+        Object value = this.getTyped(key, ConfigValueType.INT);
+        return (value != null) ? (int) value : defaultValue;
+    }
+
+    public long getLong(@NotNull String key, long defaultValue) {
+        Object value = this.getTyped(key, ConfigValueType.LONG);
+        return (value != null) ? (long) value : defaultValue;
+    }
+
+    public double getDouble(@NotNull String key, double defaultValue) {
+        Object value = this.getTyped(key, ConfigValueType.DOUBLE);
+        return (value != null) ? (double) value : defaultValue;
+    }
+
+    public boolean getBoolean(@NotNull String key, boolean defaultValue) {
+        Object value = this.getTyped(key, ConfigValueType.BOOLEAN);
+        return (value != null) ? (boolean) value : defaultValue;
+    }
+
+    public @UnknownNullability Duration getDuration(@NotNull String key, @UnknownNullability Duration defaultValue) {
+        Object value = this.getTyped(key, ConfigValueType.DURATION);
+        return (value != null) ? (Duration) value : defaultValue;
+    }
+
+    @SuppressWarnings("unchecked")
+    public @NotNull List<String> getStringList(@NotNull String key) {
+        Object value = this.getTyped(key, ConfigValueType.LIST);
+        return (value != null) ? (List<String>) value : List.of();
+    }
+
+    public @Nullable ExtensionConfig getSection(@NotNull String key) {
+        return (ExtensionConfig) this.getTyped(key, ConfigValueType.SECTION);
+    }
+
+    List<String> validate() {
+        List<String> errors = new ArrayList<>();
+
+        this.validate(errors, "main", ConfigValueType.STRING);
+        this.validate(errors, "name", ConfigValueType.STRING);
+        this.validate(errors, "version", ConfigValueType.STRING);
+        this.validate(errors, "depends", ConfigValueType.LIST);
+        this.validate(errors, "lazy", ConfigValueType.BOOLEAN);
+        this.validate(errors, "libraries", ConfigValueType.LIST);
+        this.validate(errors, "exports", ConfigValueType.LIST);
+        this.validate(errors, "imports", ConfigValueType.LIST);
+        this.validate(errors, "enable-timeout", ConfigValueType.DURATION);
+        this.validate(errors, "disable-timeout", ConfigValueType.DURATION);
+        this.validate(errors, "threads", ConfigValueType.INT);
+        this.validate(errors, "virtual-threads", ConfigValueType.BOOLEAN);
+        this.validate(errors, "preload", (this.data.get("preload") instanceof List) ? ConfigValueType.LIST : ConfigValueType.STRING);
+
+        Object schema = this.data.get(SCHEMA_KEY);
+        if (schema != null && !(schema instanceof Map)) {
+            errors.add("'%s' must be a section".formatted(SCHEMA_KEY));
+            return errors;
+        }
+
+        for (Map.Entry<String, ConfigValueType> entry : this.getSchema().entrySet()) {
+            String key = entry.getKey();
+            String declaration = String.valueOf(((Map<?, ?>) schema).get(key));
+
+            if (entry.getValue() == null) {
+                errors.add("Unknown type '%s' for '%s' in schema".formatted(declaration, key));
+                continue;
+            }
+
+            // A trailing '?' marks the value as optional
+            if (!declaration.endsWith("?") && this.data.get(key) == null) {
+                errors.add("Missing required value '%s'".formatted(key));
+                continue;
+            }
+
+            this.validate(errors, key, entry.getValue());
+        }
+
+        return errors;
+    }
+
+    private void validate(List<String> errors, String key, ConfigValueType type) {
+        Object value = this.data.get(key);
+        if (value != null && this.convert(key, type) == null) {
+            errors.add("Value '%s' must be of type %s, but was '%s'".formatted(key, type.name().toLowerCase(Locale.ROOT), value));
+        }
+    }
+
+    private Map<String, ConfigValueType> getSchema() {
+        if (!(this.data.get(SCHEMA_KEY) instanceof Map<?, ?> schema)) return Map.of();
+
+        Map<String, ConfigValueType> types = new LinkedHashMap<>();
+        for (Map.Entry<?, ?> entry : schema.entrySet()) {
+            String declaration = String.valueOf(entry.getValue());
+            if (declaration.endsWith("?")) declaration = declaration.substring(0, declaration.length() - 1);
+
+            types.put(String.valueOf(entry.getKey()), ConfigValueType.byName(declaration));
+        }
+
+        return types;
+    }
+
+    private Object getTyped(String key, ConfigValueType type) {
+        Object value = this.convert(key, type);
+        if (value != null) return value;
+
+        Object data = this.data.get(key);
+        if (data != null) {
+            throw new IllegalArgumentException("Config value '%s' must be of type %s, but was '%s'".formatted(key, type.name().toLowerCase(Locale.ROOT), data));
+        }
+
+        return null;
+    }
+
+    private Object convert(String key, ConfigValueType type) {
+        Map<String, Object> values = this.values.get(type);
+        Object value = values.get(key);
+        if (value != null) return value;
+
+        Object data = this.data.get(key);
+        if (data == null) return null;
+
+        value = type.convert(data);
+        if (value != null) values.put(key, value);
+
+        return value;
+    }
+
     @SuppressWarnings("unchecked")
     private <T> T load(String key, T defaultValue) {
         Object data = this.data.get(key);
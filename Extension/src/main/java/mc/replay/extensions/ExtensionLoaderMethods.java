@@ -4,10 +4,26 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Collection;
+import java.util.List;
 
 public interface ExtensionLoaderMethods {
 
     @NotNull Collection<JavaExtension> getExtensions();
 
     <T extends JavaExtension> @Nullable T getExtensionByName(@NotNull String string);
+
+    // Services of an owner are removed when it is unloaded, a null owner keeps the service until it is unregistered
+    <T> void registerService(@NotNull Class<T> type, @NotNull T provider, int priority, @Nullable JavaExtension owner);
+
+    default <T> void registerService(@NotNull Class<T> type, @NotNull T provider) {
+        this.registerService(type, provider, 0, null);
+    }
+
+    <T> boolean unregisterService(@NotNull Class<T> type, @NotNull T provider);
+
+    // The provider with the highest priority, the earliest registered one on ties
+    <T> @Nullable T getService(@NotNull Class<T> type);
+
+    // Highest priority first
+    <T> @NotNull List<T> getServices(@NotNull Class<T> type);
 }
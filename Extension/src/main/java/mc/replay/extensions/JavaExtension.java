@@ -5,17 +5,48 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 public abstract class JavaExtension implements Comparable<JavaExtension> {
 
     private ExtensionLoaderMethods extensionLoaderMethods;
     private ExtensionConfig config;
     private File mainFolder;
+    private ExecutorService executor;
+    private volatile boolean enabled;
 
-    final void init(ExtensionLoaderMethods extensionLoaderMethods, ExtensionConfig config, File mainFolder) {
+    final void init(ExtensionLoaderMethods extensionLoaderMethods, ExtensionConfig config, File mainFolder, ExecutorService executor) {
         this.extensionLoaderMethods = extensionLoaderMethods;
         this.config = config;
         this.mainFolder = mainFolder;
+        this.executor = executor;
+    }
+
+    // Called by the loader once every dependency is enabled, on a lifecycle thread
+    protected void onEnable() throws Exception {
+    }
+
+    // Called by the loader before this extension is unloaded, after every dependent is disabled
+    protected void onDisable() throws Exception {
+    }
+
+    // Override these for work that completes later, the loader waits for the future up to the extension's timeout
+    protected @NotNull CompletableFuture<Void> onEnableAsync() {
+        return run(this::onEnable);
+    }
+
+    protected @NotNull CompletableFuture<Void> onDisableAsync() {
+        return run(this::onDisable);
+    }
+
+    public final boolean isEnabled() {
+        return this.enabled;
+    }
+
+    final void setEnabled(boolean enabled) {
+        this.enabled = enabled;
     }
 
     public final @NotNull ExtensionConfig getConfig() {
@@ -30,6 +61,11 @@ public abstract class JavaExtension implements Comparable<JavaExtension> {
         return this.config.getVersion();
     }
 
+    // Sized by 'threads' or backed by virtual threads with 'virtual-threads: true', shut down when this extension is unloaded
+    public final @NotNull ExecutorService getExecutor() {
+        return this.executor;
+    }
+
     public final @NotNull File getMainFolder() {
         return this.mainFolder;
     }
@@ -48,6 +84,27 @@ public abstract class JavaExtension implements Comparable<JavaExtension> {
         return this.extensionLoaderMethods.getExtensionByName(name);
     }
 
+    // Removed again when this extension is unloaded
+    public final <T> void registerService(@NotNull Class<T> type, @NotNull T provider, int priority) {
+        this.extensionLoaderMethods.registerService(type, provider, priority, this);
+    }
+
+    public final <T> void registerService(@NotNull Class<T> type, @NotNull T provider) {
+        this.registerService(type, provider, 0);
+    }
+
+    public final <T> boolean unregisterService(@NotNull Class<T> type, @NotNull T provider) {
+        return this.extensionLoaderMethods.unregisterService(type, provider);
+    }
+
+    public final <T> @Nullable T getService(@NotNull Class<T> type) {
+        return this.extensionLoaderMethods.getService(type);
+    }
+
+    public final <T> @NotNull List<T> getServices(@NotNull Class<T> type) {
+        return this.extensionLoaderMethods.getServices(type);
+    }
+
     @SuppressWarnings("ResultOfMethodCallIgnored")
     public final @NotNull File getDirectory() {
         File folder = new File(this.mainFolder, this.config.getName().replace(" ", "-"));
@@ -59,6 +116,15 @@ public abstract class JavaExtension implements Comparable<JavaExtension> {
         return folder;
     }
 
+    private static CompletableFuture<Void> run(Callback callback) {
+        try {
+            callback.run();
+            return CompletableFuture.completedFuture(null);
+        } catch (Throwable throwable) {
+            return CompletableFuture.failedFuture(throwable);
+        }
+    }
+
     @Override
     public final int compareTo(@NotNull JavaExtension o) {
         for (String dependency : this.config.getDepends()) {
@@ -71,4 +137,9 @@ public abstract class JavaExtension implements Comparable<JavaExtension> {
 
         return -1;
     }
+
+    private interface Callback {
+
+        void run() throws Exception;
+    }
 }
@@ -1,13 +1,20 @@
 package mc.replay.extensions;
 
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 final class ClassFinder {
 
-    private final Map<String, ReentrantReadWriteLock> classLoadLock = new HashMap<>();
-    private final Map<String, Integer> classLoadLockCount = new HashMap<>();
+    private static final Comparator<ExtensionDescriptor> DESCRIPTOR_ORDER = Comparator.comparing(ExtensionDescriptor::getName, String.CASE_INSENSITIVE_ORDER);
+    private static final Comparator<JavaExtensionClassLoader> LOADER_ORDER = Comparator.comparing(JavaExtensionClassLoader::getDescriptor, DESCRIPTOR_ORDER);
+
+    private final Map<String, ClassLoadLock> classLoadLocks = new ConcurrentHashMap<>();
+
+    private final Map<String, List<JavaExtensionClassLoader>> loadersByPackage = new ConcurrentHashMap<>();
+    private final Map<String, List<ExtensionDescriptor>> lazyExtensionsByPackage = new ConcurrentHashMap<>();
 
     private final JavaExtensionLoader loader;
 
@@ -15,42 +22,165 @@ final class ClassFinder {
         this.loader = loader;
     }
 
-    Class<?> getClassByName(String name, boolean resolve, JavaExtensionClassLoader requester) {
-        ReentrantReadWriteLock lock;
-        synchronized (this.classLoadLock) {
-            lock = this.classLoadLock.computeIfAbsent(name, (x) -> new ReentrantReadWriteLock());
-            this.classLoadLockCount.compute(name, (x, prev) -> (prev == null) ? 1 : prev + 1);
+    // Only exported packages are indexed, everything else fails without asking any loader
+    void addLoader(JavaExtensionClassLoader loader) {
+        for (String packageName : loader.getDescriptor().getExportedPackageNames()) {
+            this.loadersByPackage.compute(packageName, (x, loaders) -> {
+                if (loaders == null) loaders = new CopyOnWriteArrayList<>();
+                loaders.add(loader);
+
+                // Ordered by name rather than load order, so split packages resolve the same way every time
+                loaders.sort(LOADER_ORDER);
+                return loaders;
+            });
         }
 
-        lock.writeLock().lock();
+        this.invalidate();
+    }
 
-        try {
-            if (requester != null) {
-                try {
-                    return requester.loadClass0(name, false, false);
-                } catch (ClassNotFoundException ignored) {
+    void removeLoader(JavaExtensionClassLoader loader) {
+        for (String packageName : loader.getDescriptor().getExportedPackageNames()) {
+            this.loadersByPackage.computeIfPresent(packageName, (x, loaders) -> {
+                loaders.remove(loader);
+                return loaders.isEmpty() ? null : loaders;
+            });
+        }
+
+        this.invalidate();
+    }
+
+    void addLazyExtension(ExtensionDescriptor descriptor) {
+        for (String packageName : descriptor.getExportedPackageNames()) {
+            this.lazyExtensionsByPackage.compute(packageName, (x, descriptors) -> {
+                if (descriptors == null) descriptors = new CopyOnWriteArrayList<>();
+                descriptors.add(descriptor);
+                descriptors.sort(DESCRIPTOR_ORDER);
+                return descriptors;
+            });
+        }
+
+        this.invalidate();
+    }
+
+    void removeLazyExtension(ExtensionDescriptor descriptor) {
+        for (String packageName : descriptor.getExportedPackageNames()) {
+            this.lazyExtensionsByPackage.computeIfPresent(packageName, (x, descriptors) -> {
+                descriptors.remove(descriptor);
+                return descriptors.isEmpty() ? null : descriptors;
+            });
+        }
+
+        this.invalidate();
+    }
+
+    Class<?> getClassByName(String name, boolean resolve, JavaExtensionClassLoader requester) {
+        Class<?> result = this.getClassByName0(name, resolve, requester);
+        this.loader.getMetricsListener().crossExtensionLookup((requester != null) ? requester.getDescriptor().getName() : null, name, result != null);
+        return result;
+    }
+
+    private Class<?> getClassByName0(String name, boolean resolve, JavaExtensionClassLoader requester) {
+        NegativeLookupCache negativeCache = this.loader.negativeCache;
+        if (negativeCache.contains(null, name)) return null;
+
+        String packageName = getPackageName(name);
+        long generation = negativeCache.getGeneration();
+
+        List<JavaExtensionClassLoader> owners = this.loadersByPackage.get(packageName);
+        ExtensionDescriptor importer = (requester != null) ? requester.getDescriptor() : null;
+
+        // Misses are cached for everyone, so a class that's only hidden from this requester must not count as one
+        boolean hidden = false;
+
+        if (owners != null) {
+            Class<?> result = this.getClassByName(name, resolve, requester, owners);
+            if (result != null) return result;
+
+            if (importer != null && importer.getImports() != null) {
+                for (JavaExtensionClassLoader owner : owners) {
+                    if (!importer.canImport(owner.getDescriptor())) hidden = true;
                 }
             }
+        }
+
+        // Lazy extensions are only materialized when they actually contain the class
+        List<ExtensionDescriptor> lazyOwners = this.lazyExtensionsByPackage.get(packageName);
+        if (lazyOwners != null) {
+            for (ExtensionDescriptor descriptor : lazyOwners) {
+                if (!descriptor.getClassNames().contains(name)) continue;
+                if (importer != null && !importer.canImport(descriptor)) {
+                    hidden = true;
+                    continue;
+                }
+
+                JavaExtensionClassLoader loader = this.loader.materializeExtension(descriptor);
+                if (loader == null || loader == requester) continue;
 
-            for (JavaExtensionClassLoader loader : this.loader.loaders.values()) {
                 try {
                     return loader.loadClass0(name, resolve, false);
                 } catch (ClassNotFoundException ignored) {
                 }
             }
-        } finally {
-            synchronized (this.classLoadLock) {
-                lock.writeLock().unlock();
-
-                if (this.classLoadLockCount.get(name) == 1) {
-                    this.classLoadLock.remove(name);
-                    this.classLoadLockCount.remove(name);
-                } else {
-                    this.classLoadLockCount.computeIfPresent(name, (x, prev) -> prev - 1);
+        }
+
+        if ((owners == null && lazyOwners == null) || hidden) return null;
+
+        negativeCache.markMissing(null, name, generation);
+        return null;
+    }
+
+    private Class<?> getClassByName(String name, boolean resolve, JavaExtensionClassLoader requester, List<JavaExtensionClassLoader> owners) {
+        ExtensionDescriptor importer = (requester != null) ? requester.getDescriptor() : null;
+
+        // Classes that are already defined don't need the lock
+        for (JavaExtensionClassLoader loader : owners) {
+            if (loader == requester || (importer != null && !importer.canImport(loader.getDescriptor()))) continue;
+
+            Class<?> loaded = loader.getLoadedClass(name);
+            if (loaded != null) return loaded;
+        }
+
+        ClassLoadLock lock = this.classLoadLocks.compute(name, (x, prev) -> {
+            ClassLoadLock classLoadLock = (prev == null) ? new ClassLoadLock() : prev;
+            classLoadLock.holders++;
+            return classLoadLock;
+        });
+
+        long start = System.nanoTime();
+
+        try {
+            synchronized (lock) {
+                this.loader.getMetricsListener().classLoadLockWait((importer != null) ? importer.getName() : null, name, System.nanoTime() - start);
+
+                for (JavaExtensionClassLoader loader : owners) {
+                    // The requester already searched its own jar before asking us
+                    if (loader == requester || (importer != null && !importer.canImport(loader.getDescriptor()))) continue;
+
+                    try {
+                        return loader.loadClass0(name, resolve, false);
+                    } catch (ClassNotFoundException ignored) {
+                    }
                 }
             }
+        } finally {
+            this.classLoadLocks.computeIfPresent(name, (x, classLoadLock) -> (--classLoadLock.holders == 0) ? null : classLoadLock);
         }
 
         return null;
     }
-}
\ No newline at end of file
+
+    private void invalidate() {
+        this.loader.negativeCache.invalidate();
+    }
+
+    static String getPackageName(String className) {
+        int dot = className.lastIndexOf('.');
+        return (dot == -1) ? "" : className.substring(0, dot);
+    }
+
+    private static final class ClassLoadLock {
+
+        // Only accessed inside ConcurrentHashMap#compute for this lock's name
+        private int holders;
+    }
+}
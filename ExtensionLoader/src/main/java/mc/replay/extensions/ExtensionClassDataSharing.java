@@ -0,0 +1,113 @@
+package mc.replay.extensions;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+// Manages a dynamic CDS archive for the extension classes. Classes defined by our loaders are
+// served from the archive when their bytes still match, which skips parsing and verification.
+// The JVM only picks the archive up at launch, so we maintain an @argfile for the start script:
+//   java @extensions/.extension-cds/jvm.args -jar server.jar
+final class ExtensionClassDataSharing {
+
+    private static final String FOLDER_NAME = ".extension-cds";
+    private static final String ARGUMENTS_FILE_NAME = "jvm.args";
+
+    private final File folder;
+
+    ExtensionClassDataSharing(@NotNull File extensionFolder) {
+        this.folder = new File(extensionFolder, FOLDER_NAME);
+    }
+
+    @NotNull File getArgumentsFile() {
+        return new File(this.folder, ARGUMENTS_FILE_NAME);
+    }
+
+    @NotNull File getArchiveFile(@NotNull Collection<ExtensionDescriptor> descriptors) {
+        return new File(this.folder, getArchiveKey(descriptors) + ".jsa");
+    }
+
+    boolean isArchiveMapped(@NotNull File archive) {
+        return archive.isFile() && hasArgument("-XX:SharedArchiveFile=", archive);
+    }
+
+    // Points the next launch at the archive for the current set of jars, or records one if it doesn't exist yet
+    void update(@NotNull Collection<ExtensionDescriptor> descriptors) throws IOException {
+        File archive = this.getArchiveFile(descriptors);
+        String path = archive.getAbsolutePath();
+
+        String arguments;
+        if (Runtime.version().feature() >= 19) {
+            arguments = "-XX:+AutoCreateSharedArchive -XX:SharedArchiveFile=\"%s\"".formatted(path);
+        } else if (archive.isFile() || hasArgument("-XX:ArchiveClassesAtExit=", archive)) {
+            // Either the archive exists, or this is the training run and it is written when the JVM exits
+            arguments = "-XX:SharedArchiveFile=\"%s\"".formatted(path);
+        } else {
+            arguments = "-XX:ArchiveClassesAtExit=\"%s\"".formatted(path);
+        }
+
+        if (!this.folder.isDirectory() && !this.folder.mkdirs()) {
+            throw new IOException("Could not create folder '%s'".formatted(this.folder));
+        }
+
+        File argumentsFile = this.getArgumentsFile();
+        if (!argumentsFile.isFile() || !Files.readString(argumentsFile.toPath()).strip().equals(arguments)) {
+            Files.writeString(argumentsFile.toPath(), arguments + System.lineSeparator());
+        }
+
+        String prefix = archive.getName().substring(0, archive.getName().length() - 4);
+        File[] files = this.folder.listFiles();
+        if (files == null) return;
+
+        // Archives for other jar sets can never be used again
+        for (File file : files) {
+            if (file.getName().equals(ARGUMENTS_FILE_NAME) || file.getName().startsWith(prefix)) continue;
+            if (file.getName().endsWith(".jsa")) Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    private static boolean hasArgument(String prefix, File archive) {
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (argument.startsWith(prefix) && new File(argument.substring(prefix.length())).getAbsoluteFile().equals(archive.getAbsoluteFile())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // An archive is only valid for the exact JVM build, class path and extension jars it was dumped with
+    static @NotNull String getArchiveKey(@NotNull Collection<ExtensionDescriptor> descriptors) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+
+        List<ExtensionDescriptor> sorted = new ArrayList<>(descriptors);
+        sorted.sort(Comparator.comparing((descriptor) -> descriptor.getFile().getName()));
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(System.getProperty("java.vm.version")).append('\n');
+        builder.append(System.getProperty("java.class.path")).append('\n');
+
+        for (ExtensionDescriptor descriptor : sorted) {
+            JarFingerprint fingerprint = descriptor.getFingerprint();
+            builder.append(descriptor.getFile().getName()).append(' ')
+                    .append(fingerprint.getSize()).append(' ')
+                    .append(fingerprint.getLastModified()).append(' ')
+                    .append(fingerprint.getHash()).append('\n');
+        }
+
+        byte[] hash = digest.digest(builder.toString().getBytes(StandardCharsets.UTF_8));
+        return "extensions-" + HexFormat.of().formatHex(hash, 0, 8);
+    }
+}
@@ -0,0 +1,28 @@
+package mc.replay.extensions;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.List;
+
+// Transformed classes are cached on disk per jar, bump the version whenever the output for the same input changes
+public interface ExtensionClassTransformer {
+
+    @NotNull String getName();
+
+    @NotNull String getVersion();
+
+    // Extension names this transformer applies to, empty for all of them
+    default @NotNull Collection<String> getExtensions() {
+        return List.of();
+    }
+
+    // Package globs like 'exports' in extension.yml, empty for every package
+    default @NotNull List<String> getPackages() {
+        return List.of();
+    }
+
+    // Returns null to leave the class as it is
+    byte @Nullable [] transform(@NotNull String extensionName, @NotNull String className, byte @NotNull [] classBytes) throws Exception;
+}
@@ -0,0 +1,214 @@
+package mc.replay.extensions;
+
+import mc.replay.extensions.exception.InvalidExtensionException;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.*;
+
+final class ExtensionDependencyGraph {
+
+    private static final String ALL_DEPENDENCY = "all";
+
+    private final Map<String, ExtensionDescriptor> descriptors = new LinkedHashMap<>();
+    private final Map<ExtensionDescriptor, Set<String>> dependencies = new HashMap<>();
+    private final Map<File, InvalidExtensionException> failures = new LinkedHashMap<>();
+    private final Set<String> failedNames = new HashSet<>();
+    private final List<List<ExtensionDescriptor>> waves = new ArrayList<>();
+
+    ExtensionDependencyGraph(@NotNull Collection<ExtensionDescriptor> descriptors, @NotNull Collection<String> loaded) {
+        Set<String> loadedNames = new HashSet<>();
+        for (String name : loaded) {
+            loadedNames.add(key(name));
+        }
+
+        for (ExtensionDescriptor descriptor : descriptors) {
+            String name = key(descriptor.getName());
+
+            ExtensionDescriptor duplicate = this.descriptors.get(name);
+            if (duplicate != null || loadedNames.contains(name)) {
+                this.fail(descriptor, "Extension '%s' in '%s' is already provided by %s".formatted(
+                        descriptor.getName(),
+                        descriptor.getFile().getName(),
+                        (duplicate != null) ? "'" + duplicate.getFile().getName() + "'" : "a loaded extension"
+                ));
+                continue;
+            }
+
+            this.descriptors.put(name, descriptor);
+        }
+
+        this.resolveDependencies(loadedNames);
+        this.sort();
+    }
+
+    @NotNull List<List<ExtensionDescriptor>> getWaves() {
+        return this.waves;
+    }
+
+    @NotNull Set<String> getDependencies(@NotNull ExtensionDescriptor descriptor) {
+        return this.dependencies.getOrDefault(descriptor, Set.of());
+    }
+
+    @NotNull String getDependencyName(@NotNull ExtensionDescriptor descriptor, @NotNull String dependency) {
+        for (String name : descriptor.getConfig().getDepends()) {
+            if (key(name).equals(dependency)) return name;
+        }
+
+        ExtensionDescriptor dependencyDescriptor = this.descriptors.get(dependency);
+        return (dependencyDescriptor != null) ? dependencyDescriptor.getName() : dependency;
+    }
+
+    @NotNull Map<File, InvalidExtensionException> getFailures() {
+        return this.failures;
+    }
+
+    private void resolveDependencies(Set<String> loadedNames) {
+        for (ExtensionDescriptor descriptor : this.descriptors.values()) {
+            String name = key(descriptor.getName());
+            Set<String> dependencies = new LinkedHashSet<>();
+
+            for (String dependency : descriptor.getConfig().getDepends()) {
+                String dependencyName = key(dependency);
+
+                // Already loaded extensions satisfy the dependency without taking part in the ordering
+                if (dependencyName.equals(name) || dependencyName.equals(ALL_DEPENDENCY) || loadedNames.contains(dependencyName)) {
+                    continue;
+                }
+
+                dependencies.add(dependencyName);
+            }
+
+            this.dependencies.put(descriptor, dependencies);
+        }
+
+        // Drop extensions with missing dependencies, and everything that (transitively) depends on them
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            Iterator<ExtensionDescriptor> iterator = this.descriptors.values().iterator();
+            while (iterator.hasNext()) {
+                ExtensionDescriptor descriptor = iterator.next();
+
+                for (String dependency : this.dependencies.get(descriptor)) {
+                    if (this.descriptors.containsKey(dependency)) continue;
+
+                    this.fail(descriptor, this.failedNames.contains(dependency)
+                            ? "Extension '%s' depends on extension '%s' which could not be loaded".formatted(descriptor.getName(), this.getDependencyName(descriptor, dependency))
+                            : "Extension '%s' depends on missing extension '%s'".formatted(descriptor.getName(), this.getDependencyName(descriptor, dependency)));
+
+                    iterator.remove();
+                    changed = true;
+                    break;
+                }
+            }
+        }
+
+        // 'all' loads after every remaining extension that doesn't depend on 'all' itself
+        for (Map.Entry<String, ExtensionDescriptor> entry : this.descriptors.entrySet()) {
+            if (!dependsOnAll(entry.getValue())) continue;
+
+            Set<String> dependencies = this.dependencies.get(entry.getValue());
+            for (Map.Entry<String, ExtensionDescriptor> other : this.descriptors.entrySet()) {
+                if (!other.getKey().equals(entry.getKey()) && !dependsOnAll(other.getValue())) {
+                    dependencies.add(other.getKey());
+                }
+            }
+        }
+    }
+
+    private void sort() {
+        Map<String, Integer> remainingDependencies = new HashMap<>();
+        Map<String, List<String>> dependents = new HashMap<>();
+
+        for (Map.Entry<String, ExtensionDescriptor> entry : this.descriptors.entrySet()) {
+            Set<String> dependencies = this.dependencies.get(entry.getValue());
+            remainingDependencies.put(entry.getKey(), dependencies.size());
+
+            for (String dependency : dependencies) {
+                dependents.computeIfAbsent(dependency, (x) -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+
+        List<String> ready = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : remainingDependencies.entrySet()) {
+            if (entry.getValue() == 0) ready.add(entry.getKey());
+        }
+
+        Set<String> sorted = new HashSet<>();
+        while (!ready.isEmpty()) {
+            List<ExtensionDescriptor> wave = new ArrayList<>(ready.size());
+            List<String> next = new ArrayList<>();
+
+            for (String name : ready) {
+                wave.add(this.descriptors.get(name));
+                sorted.add(name);
+
+                for (String dependent : dependents.getOrDefault(name, List.of())) {
+                    if (remainingDependencies.merge(dependent, -1, Integer::sum) == 0) {
+                        next.add(dependent);
+                    }
+                }
+            }
+
+            wave.sort(Comparator.comparing(ExtensionDescriptor::getName, String.CASE_INSENSITIVE_ORDER));
+            this.waves.add(wave);
+            ready = next;
+        }
+
+        if (sorted.size() == this.descriptors.size()) return;
+
+        // Everything that couldn't be sorted is part of, or depends on, a cycle
+        for (Map.Entry<String, ExtensionDescriptor> entry : this.descriptors.entrySet()) {
+            if (sorted.contains(entry.getKey())) continue;
+
+            List<String> cycle = this.findCycle(entry.getKey(), sorted);
+            this.fail(entry.getValue(), cycle.isEmpty()
+                    ? "Extension '%s' depends on an extension in a dependency cycle".formatted(entry.getValue().getName())
+                    : "Extension '%s' is part of a dependency cycle: %s".formatted(entry.getValue().getName(), String.join(" -> ", cycle)));
+        }
+    }
+
+    private List<String> findCycle(String start, Set<String> sorted) {
+        Deque<String> path = new ArrayDeque<>();
+        return this.findCycle(start, start, sorted, path, new HashSet<>()) ? new ArrayList<>(path) : List.of();
+    }
+
+    private boolean findCycle(String start, String current, Set<String> sorted, Deque<String> path, Set<String> visited) {
+        path.addLast(this.descriptors.get(current).getName());
+
+        for (String dependency : this.dependencies.get(this.descriptors.get(current))) {
+            if (sorted.contains(dependency)) continue;
+
+            if (dependency.equals(start)) {
+                path.addLast(this.descriptors.get(start).getName());
+                return true;
+            }
+
+            if (visited.add(dependency) && this.findCycle(start, dependency, sorted, path, visited)) {
+                return true;
+            }
+        }
+
+        path.removeLast();
+        return false;
+    }
+
+    private void fail(ExtensionDescriptor descriptor, String message) {
+        this.failures.put(descriptor.getFile(), new InvalidExtensionException(message));
+        this.failedNames.add(key(descriptor.getName()));
+    }
+
+    private static boolean dependsOnAll(ExtensionDescriptor descriptor) {
+        for (String dependency : descriptor.getConfig().getDepends()) {
+            if (dependency.equalsIgnoreCase(ALL_DEPENDENCY)) return true;
+        }
+
+        return false;
+    }
+
+    static @NotNull String key(@NotNull String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
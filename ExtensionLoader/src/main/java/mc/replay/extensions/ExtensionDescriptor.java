@@ -0,0 +1,129 @@
+package mc.replay.extensions;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.security.CodeSource;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+final class ExtensionDescriptor {
+
+    private final File file;
+    private final ExtensionConfig config;
+    private final JarFingerprint fingerprint;
+    private final Set<String> classNames;
+    private final Set<String> packageNames;
+    private final Set<String> exportedPackageNames;
+    private final Set<String> imports;
+    private final CodeSource codeSource;
+    private final String verifiedDigest;
+
+    ExtensionDescriptor(@NotNull File file, @NotNull ExtensionConfig config, @NotNull JarFingerprint fingerprint, @NotNull Collection<String> classNames) {
+        this(file, config, fingerprint, classNames, null, null);
+    }
+
+    private ExtensionDescriptor(File file, ExtensionConfig config, JarFingerprint fingerprint, Collection<String> classNames, CodeSource codeSource, String verifiedDigest) {
+        this.file = file;
+        this.codeSource = codeSource;
+        this.verifiedDigest = verifiedDigest;
+        this.config = config;
+        this.fingerprint = fingerprint;
+        this.classNames = Collections.unmodifiableSet(new LinkedHashSet<>(classNames));
+
+        Set<String> packageNames = new HashSet<>();
+        for (String className : classNames) {
+            packageNames.add(ClassFinder.getPackageName(className));
+        }
+
+        this.packageNames = Collections.unmodifiableSet(packageNames);
+
+        List<String> exports = config.getExports();
+        if (exports == null) {
+            this.exportedPackageNames = this.packageNames;
+        } else {
+            Predicate<String> filter = ExtensionLoaderUtils.getPackageFilter(exports);
+            this.exportedPackageNames = packageNames.stream().filter(filter).collect(Collectors.toUnmodifiableSet());
+        }
+
+        List<String> imports = config.getImports();
+        if (imports == null) {
+            this.imports = null;
+        } else {
+            // Dependencies are always visible
+            Set<String> visible = new HashSet<>();
+            for (String name : imports) visible.add(ExtensionDependencyGraph.key(name));
+            for (String name : config.getDepends()) visible.add(ExtensionDependencyGraph.key(name));
+
+            this.imports = Collections.unmodifiableSet(visible);
+        }
+    }
+
+    @NotNull File getFile() {
+        return this.file;
+    }
+
+    @NotNull ExtensionConfig getConfig() {
+        return this.config;
+    }
+
+    @NotNull String getName() {
+        return this.config.getName();
+    }
+
+    @NotNull JarFingerprint getFingerprint() {
+        return this.fingerprint;
+    }
+
+    @NotNull Set<String> getClassNames() {
+        return this.classNames;
+    }
+
+    @NotNull Set<String> getPackageNames() {
+        return this.packageNames;
+    }
+
+    // Never stored in the descriptor cache, verification has to happen on every discovery
+    @NotNull ExtensionDescriptor withVerification(@NotNull CodeSource codeSource, @NotNull String verifiedDigest) {
+        return new ExtensionDescriptor(this.file, this.config, this.fingerprint, this.classNames, codeSource, verifiedDigest);
+    }
+
+    @Nullable CodeSource getCodeSource() {
+        return this.codeSource;
+    }
+
+    // SHA-256 of the jar that passed verification, the class loader checks the jar it opens against it
+    @Nullable String getVerifiedDigest() {
+        return this.verifiedDigest;
+    }
+
+    // Only these packages can be resolved by other extensions
+    @NotNull Set<String> getExportedPackageNames() {
+        return this.exportedPackageNames;
+    }
+
+    // Extensions whose exports this one can resolve, null if it can resolve all of them
+    @Nullable Set<String> getImports() {
+        return this.imports;
+    }
+
+    boolean canImport(@NotNull ExtensionDescriptor exporter) {
+        return this.imports == null || this.imports.contains(ExtensionDependencyGraph.key(exporter.getName()));
+    }
+
+    @Override
+    public String toString() {
+        return "ExtensionDescriptor{" +
+                "name=" + this.config.getName() +
+                ", file=" + this.file +
+                ", fingerprint=" + this.fingerprint +
+                '}';
+    }
+}
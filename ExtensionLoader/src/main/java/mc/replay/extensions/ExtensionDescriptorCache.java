@@ -0,0 +1,297 @@
+package mc.replay.extensions;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class ExtensionDescriptorCache {
+
+    static final String FILE_NAME = ".extension-cache";
+
+    private static final int MAGIC = 0x4D524543;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_DOUBLE = 4;
+    private static final byte TYPE_BOOLEAN = 5;
+    private static final byte TYPE_LIST = 6;
+    private static final byte TYPE_MAP = 7;
+
+    private final File file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    private volatile boolean loaded;
+    private volatile boolean dirty;
+
+    ExtensionDescriptorCache(@NotNull File folder) {
+        this.file = new File(folder, FILE_NAME);
+    }
+
+    @Nullable ExtensionDescriptor get(@NotNull File jar, @NotNull JarFingerprint fingerprint) {
+        this.load();
+
+        Entry entry = this.entries.get(jar.getName());
+        if (entry == null || !entry.fingerprint.equals(fingerprint)) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+
+        this.hits.incrementAndGet();
+        return new ExtensionDescriptor(jar, new ExtensionConfig(entry.data), fingerprint, entry.classNames);
+    }
+
+    void put(@NotNull ExtensionDescriptor descriptor) {
+        Map<String, Object> data = descriptor.getConfig().getData();
+
+        // Only plain yaml values can be stored, anything else is parsed from the jar every time
+        if (!isSupported(data)) {
+            this.entries.remove(descriptor.getFile().getName());
+            return;
+        }
+
+        this.entries.put(descriptor.getFile().getName(), new Entry(descriptor.getFingerprint(), data, descriptor.getClassNames()));
+        this.dirty = true;
+    }
+
+    void retain(@NotNull Collection<File> jars) {
+        Set<String> names = new HashSet<>();
+        for (File jar : jars) {
+            names.add(jar.getName());
+        }
+
+        if (this.entries.keySet().retainAll(names)) {
+            this.dirty = true;
+        }
+    }
+
+    int getHits() {
+        return this.hits.get();
+    }
+
+    int getMisses() {
+        return this.misses.get();
+    }
+
+    synchronized void save() {
+        if (!this.dirty) return;
+
+        File temp = new File(this.file.getParentFile(), FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+
+            Map<String, Entry> entries = new HashMap<>(this.entries);
+            out.writeInt(entries.size());
+
+            for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+
+                writeString(out, mapEntry.getKey());
+                out.writeLong(entry.fingerprint.getSize());
+                out.writeLong(entry.fingerprint.getLastModified());
+                writeValue(out, entry.fingerprint.getHash());
+                writeValue(out, entry.data);
+
+                out.writeInt(entry.classNames.size());
+                for (String className : entry.classNames) {
+                    writeString(out, className);
+                }
+            }
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            temp.delete();
+            return;
+        }
+
+        try {
+            Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.dirty = false;
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            temp.delete();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized void load() {
+        if (this.loaded) return;
+        this.loaded = true;
+
+        if (!this.file.isFile()) return;
+
+        // Every element takes at least one byte, so no count or length can be larger than the file
+        long max = this.file.length();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return;
+
+            int size = readLength(in, max);
+            for (int i = 0; i < size; i++) {
+                String name = readString(in, max);
+                JarFingerprint fingerprint = new JarFingerprint(in.readLong(), in.readLong(), (String) readValue(in, max));
+                Map<String, Object> data = (Map<String, Object>) readValue(in, max);
+
+                int classCount = readLength(in, max);
+                List<String> classNames = new ArrayList<>(classCount);
+                for (int j = 0; j < classCount; j++) {
+                    classNames.add(readString(in, max));
+                }
+
+                this.entries.put(name, new Entry(fingerprint, data, classNames));
+            }
+        } catch (IOException | RuntimeException exception) {
+            // A broken cache only costs a re-parse
+            this.entries.clear();
+            this.dirty = true;
+        }
+    }
+
+    private static boolean isSupported(Object value) {
+        if (value == null || value instanceof String || value instanceof Integer || value instanceof Long
+                || value instanceof Double || value instanceof Boolean) {
+            return true;
+        }
+
+        if (value instanceof List<?> list) {
+            for (Object element : list) {
+                if (!isSupported(element)) return false;
+            }
+
+            return true;
+        }
+
+        if (value instanceof Map<?, ?> map) {
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (!isSupported(entry.getKey()) || !isSupported(entry.getValue())) return false;
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof String string) {
+            out.writeByte(TYPE_STRING);
+            writeString(out, string);
+        } else if (value instanceof Integer integer) {
+            out.writeByte(TYPE_INT);
+            out.writeInt(integer);
+        } else if (value instanceof Long longValue) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong(longValue);
+        } else if (value instanceof Double doubleValue) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble(doubleValue);
+        } else if (value instanceof Boolean booleanValue) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean(booleanValue);
+        } else if (value instanceof List<?> list) {
+            out.writeByte(TYPE_LIST);
+            out.writeInt(list.size());
+
+            for (Object element : list) {
+                writeValue(out, element);
+            }
+        } else if (value instanceof Map<?, ?> map) {
+            out.writeByte(TYPE_MAP);
+            out.writeInt(map.size());
+
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(out, entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        } else {
+            throw new IOException("Unsupported value type " + value.getClass().getName());
+        }
+    }
+
+    private static int readLength(DataInputStream in, long max) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > max) {
+            throw new IOException("Corrupt length " + length);
+        }
+
+        return length;
+    }
+
+    private static Object readValue(DataInputStream in, long max) throws IOException {
+        byte type = in.readByte();
+
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_STRING:
+                return readString(in, max);
+            case TYPE_INT:
+                return in.readInt();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_LIST: {
+                int size = readLength(in, max);
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in, max));
+                }
+
+                return list;
+            }
+            case TYPE_MAP: {
+                int size = readLength(in, max);
+                Map<Object, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < size; i++) {
+                    map.put(readValue(in, max), readValue(in, max));
+                }
+
+                return map;
+            }
+            default:
+                throw new IOException("Unknown value type " + type);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in, long max) throws IOException {
+        byte[] bytes = new byte[readLength(in, max)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class Entry {
+
+        private final JarFingerprint fingerprint;
+        private final Map<String, Object> data;
+        private final Collection<String> classNames;
+
+        private Entry(JarFingerprint fingerprint, Map<String, Object> data, Collection<String> classNames) {
+            this.fingerprint = fingerprint;
+            this.data = data;
+            this.classNames = classNames;
+        }
+    }
+}
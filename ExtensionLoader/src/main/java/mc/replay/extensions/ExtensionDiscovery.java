@@ -0,0 +1,85 @@
+package mc.replay.extensions;
+
+import mc.replay.extensions.exception.InvalidConfigurationException;
+import mc.replay.extensions.exception.InvalidExtensionException;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+final class ExtensionDiscovery {
+
+    private ExtensionDiscovery() {
+    }
+
+    static @NotNull List<ExtensionDescriptor> discover(@NotNull JavaExtensionLoader loader, @NotNull File[] files, @NotNull ExecutorService executor, @NotNull Map<File, InvalidExtensionException> failures) throws InvalidExtensionException {
+        List<ExtensionDescriptor> descriptors = new ArrayList<>(files.length);
+        if (files.length == 0) return descriptors;
+
+        if (files.length == 1) {
+            try {
+                descriptors.add(discover(loader, files[0]));
+            } catch (InvalidExtensionException exception) {
+                failures.put(files[0], exception);
+            }
+
+            return descriptors;
+        }
+
+        try {
+            List<Future<ExtensionDescriptor>> futures = new ArrayList<>(files.length);
+            for (File file : files) {
+                futures.add(executor.submit(() -> discover(loader, file)));
+            }
+
+            for (int i = 0; i < files.length; i++) {
+                try {
+                    descriptors.add(futures.get(i).get());
+                } catch (ExecutionException exception) {
+                    Throwable cause = exception.getCause();
+                    failures.put(files[i], (cause instanceof InvalidExtensionException invalidExtensionException)
+                            ? invalidExtensionException
+                            : new InvalidExtensionException("Could not discover extension file '%s'".formatted(files[i].getName()), cause));
+                }
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InvalidExtensionException("Interrupted while discovering extensions", exception);
+        }
+
+        return descriptors;
+    }
+
+    static @NotNull ExtensionDescriptor discover(@NotNull JavaExtensionLoader loader, @NotNull File file) throws InvalidExtensionException {
+        if (!file.exists() || !file.getParentFile().equals(loader.getFolder())) {
+            throw new InvalidExtensionException("File '%s' doesn't exist or is not in folder of this loader.".formatted(file.getName()));
+        }
+
+        ExtensionDescriptorCache cache = loader.getDescriptorCache();
+        long start = System.nanoTime();
+
+        try {
+            JarFingerprint fingerprint = JarFingerprint.of(file, loader.isDescriptorCacheHashing());
+
+            ExtensionDescriptor descriptor = (cache != null) ? cache.get(file, fingerprint) : null;
+            boolean cached = descriptor != null;
+
+            if (descriptor == null) {
+                descriptor = ExtensionLoaderUtils.getDescriptor(file, fingerprint);
+                if (cache != null) cache.put(descriptor);
+            }
+
+            loader.getMetricsListener().descriptorParsed(file, System.nanoTime() - start, cached);
+
+            return ExtensionVerifier.verify(loader.getVerificationPolicy(), loader.getTrustedDigests(), loader.getTrustedCertificates(), descriptor);
+        } catch (IOException | InvalidConfigurationException exception) {
+            throw new InvalidExtensionException(exception);
+        }
+    }
+}
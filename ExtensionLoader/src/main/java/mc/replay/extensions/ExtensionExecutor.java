@@ -0,0 +1,164 @@
+package mc.replay.extensions;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// One per extension, every task is accounted to the extension that submitted it
+final class ExtensionExecutor extends AbstractExecutorService {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final String name;
+    private final ExecutorService delegate;
+    private final boolean virtual;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+
+    ExtensionExecutor(@NotNull String name, int threads, boolean virtual) {
+        ExecutorService delegate = virtual ? createVirtualExecutor("Extension-" + name + "-") : null;
+
+        this.name = name;
+        this.virtual = delegate != null;
+        this.delegate = (delegate != null) ? delegate : ExtensionLoaderUtils.createExecutor("Extension-" + name, threads);
+    }
+
+    @Override
+    public void execute(@NotNull Runnable command) {
+        long submittedAt = System.nanoTime();
+
+        this.submitted.increment();
+        this.queued.incrementAndGet();
+
+        try {
+            this.delegate.execute(() -> this.run(command, submittedAt));
+        } catch (RejectedExecutionException exception) {
+            this.submitted.decrement();
+            this.queued.decrementAndGet();
+            throw exception;
+        }
+    }
+
+    private void run(Runnable command, long submittedAt) {
+        long latency = System.nanoTime() - submittedAt;
+        this.queued.decrementAndGet();
+        this.active.incrementAndGet();
+        this.latencyNanos.add(latency);
+        this.maxLatencyNanos.accumulate(latency);
+
+        long cpu = getCpuTime();
+        long allocated = getAllocatedBytes();
+        boolean success = false;
+
+        try {
+            command.run();
+            success = true;
+        } finally {
+            // Both are -1 where the JVM can't measure them, virtual threads have no CPU time before JDK 21
+            if (cpu != -1) {
+                long end = getCpuTime();
+                if (end != -1) this.cpuNanos.add(end - cpu);
+            }
+
+            if (allocated != -1) {
+                long end = getAllocatedBytes();
+                if (end != -1) this.allocatedBytes.add(end - allocated);
+            }
+
+            this.active.decrementAndGet();
+            (success ? this.completed : this.failed).increment();
+        }
+    }
+
+    @NotNull ExtensionResourceUsage getUsage() {
+        return new ExtensionResourceUsage(
+                this.name,
+                this.virtual,
+                this.submitted.sum(),
+                this.completed.sum(),
+                this.failed.sum(),
+                this.queued.get(),
+                this.active.get(),
+                this.cpuNanos.sum(),
+                this.allocatedBytes.sum(),
+                this.latencyNanos.sum(),
+                this.maxLatencyNanos.get()
+        );
+    }
+
+    // The executor belongs to the loader and is shut down on unload, so an extension closing it is simply ignored
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public @NotNull List<Runnable> shutdownNow() {
+        return List.of();
+    }
+
+    // ExecutorService.close() from JDK 19 on, its default would wait for a shutdown that never comes
+    public void close() {
+    }
+
+    void shutdown0() {
+        this.delegate.shutdown();
+    }
+
+    void shutdownNow0() {
+        this.delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return this.delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return this.delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+        return this.delegate.awaitTermination(timeout, unit);
+    }
+
+    private static long getCpuTime() {
+        return (THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled()) ? THREADS.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static long getAllocatedBytes() {
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean threads)) return -1;
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) return -1;
+
+        return threads.getCurrentThreadAllocatedBytes();
+    }
+
+    // Virtual threads only exist from JDK 21 on, this is compiled against 17
+    private static ExecutorService createVirtualExecutor(String prefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 1L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException exception) {
+            return null;
+        }
+    }
+}
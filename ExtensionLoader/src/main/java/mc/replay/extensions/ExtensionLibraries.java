@@ -0,0 +1,170 @@
+package mc.replay.extensions;
+
+import mc.replay.extensions.exception.InvalidExtensionException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+// Library jars are keyed by their SHA-256, so every version is defined exactly once no matter how many extensions declare it
+final class ExtensionLibraries {
+
+    static final String FOLDER_NAME = "libraries";
+    private static final String EXTRACT_FOLDER_NAME = ".extension-libraries";
+
+    private final File folder;
+    private final File extractFolder;
+    private final ClassLoader parent;
+
+    private final Map<String, ExtensionLibraryClassLoader> loaders = new HashMap<>();
+    private final Map<File, Map.Entry<JarFingerprint, String>> hashes = new HashMap<>();
+    private final Map<String, File> extracted = new HashMap<>();
+
+    ExtensionLibraries(@NotNull File extensionFolder, @Nullable ClassLoader parent) {
+        this.folder = new File(extensionFolder, FOLDER_NAME);
+        this.extractFolder = new File(extensionFolder, EXTRACT_FOLDER_NAME);
+        this.parent = parent;
+    }
+
+    // Libraries are either jars nested in the extension, or jars in the shared libraries folder
+    synchronized @NotNull List<ExtensionLibraryClassLoader> acquire(@NotNull ExtensionDescriptor descriptor, @NotNull JarFile jarFile) throws IOException, InvalidExtensionException {
+        List<String> libraries = descriptor.getConfig().getLibraries();
+        if (libraries.isEmpty()) return List.of();
+
+        List<ExtensionLibraryClassLoader> acquired = new ArrayList<>(libraries.size());
+
+        try {
+            for (String library : libraries) {
+                ExtensionLibraryClassLoader loader = this.getLoader(descriptor, jarFile, library);
+                if (acquired.contains(loader)) continue;
+
+                loader.retain();
+                acquired.add(loader);
+            }
+        } catch (IOException | InvalidExtensionException exception) {
+            this.release(acquired);
+            throw exception;
+        }
+
+        List<ExtensionLibraryClassLoader> result = Collections.unmodifiableList(acquired);
+        for (ExtensionLibraryClassLoader loader : result) {
+            loader.addGroup(descriptor.getName(), result);
+        }
+
+        return result;
+    }
+
+    synchronized void release(@NotNull List<ExtensionLibraryClassLoader> acquired) throws IOException {
+        IOException failure = null;
+
+        for (ExtensionLibraryClassLoader loader : acquired) {
+            loader.removeGroup(acquired);
+            if (loader.release() > 0) continue;
+
+            this.loaders.remove(loader.getHash());
+
+            try {
+                loader.close();
+
+                // Extracted copies are only kept while an extension uses them, upgrades would otherwise pile them up
+                File file = loader.getFile();
+                if (this.extractFolder.equals(file.getParentFile())) {
+                    this.extracted.values().removeIf(file::equals);
+                    Files.deleteIfExists(file.toPath());
+                }
+            } catch (IOException exception) {
+                if (failure == null) failure = exception;
+                else failure.addSuppressed(exception);
+            }
+        }
+
+        if (failure != null) throw failure;
+    }
+
+    private ExtensionLibraryClassLoader getLoader(ExtensionDescriptor descriptor, JarFile jarFile, String library) throws IOException, InvalidExtensionException {
+        File file;
+        String hash;
+
+        JarEntry entry = jarFile.getJarEntry(library);
+        if (entry != null && !entry.isDirectory()) {
+            file = this.extract(jarFile, entry);
+            hash = file.getName().substring(0, file.getName().length() - ".jar".length());
+        } else {
+            file = new File(this.folder, library);
+            if (!file.isFile()) {
+                throw new InvalidExtensionException("Library '%s' of extension '%s' is neither nested in '%s' nor in the %s folder".formatted(
+                        library, descriptor.getName(), descriptor.getFile().getName(), FOLDER_NAME));
+            }
+
+            hash = this.getHash(file);
+        }
+
+        ExtensionLibraryClassLoader loader = this.loaders.get(hash);
+        if (loader == null) {
+            loader = new ExtensionLibraryClassLoader(new File(library).getName(), hash, file, this.parent);
+            this.loaders.put(hash, loader);
+        }
+
+        return loader;
+    }
+
+    private String getHash(File file) throws IOException {
+        JarFingerprint fingerprint = JarFingerprint.of(file, false);
+
+        Map.Entry<JarFingerprint, String> cached = this.hashes.get(file);
+        if (cached != null && cached.getKey().equals(fingerprint)) return cached.getValue();
+
+        String hash = JarFingerprint.sha256(file);
+        this.hashes.put(file, Map.entry(fingerprint, hash));
+        return hash;
+    }
+
+    // Class loaders need a file, nested jars are copied out once and named after their hash
+    private File extract(JarFile jarFile, JarEntry entry) throws IOException {
+        // Loading the same jar again doesn't copy and hash the library again while it is unchanged
+        String key = jarFile.getName() + "!" + entry.getName() + ":" + entry.getSize() + ":" + entry.getCrc();
+        File previous = this.extracted.get(key);
+        if (entry.getCrc() != -1 && previous != null && previous.length() == entry.getSize()) return previous;
+
+        if (!this.extractFolder.isDirectory() && !this.extractFolder.mkdirs()) {
+            throw new IOException("Could not create folder '%s'".formatted(this.extractFolder));
+        }
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+
+        File temporary = File.createTempFile("library-", ".tmp", this.extractFolder);
+
+        try {
+            try (InputStream in = jarFile.getInputStream(entry);
+                 OutputStream out = new DigestOutputStream(Files.newOutputStream(temporary.toPath()), digest)) {
+                in.transferTo(out);
+            }
+
+            File file = new File(this.extractFolder, HexFormat.of().formatHex(digest.digest()) + ".jar");
+            if (!file.isFile()) {
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            this.extracted.put(key, file);
+            return file;
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+    }
+}
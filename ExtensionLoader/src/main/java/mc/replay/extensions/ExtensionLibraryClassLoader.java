@@ -0,0 +1,112 @@
+package mc.replay.extensions;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// One per unique library jar, shared by every extension that declares it
+final class ExtensionLibraryClassLoader extends URLClassLoader {
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    private final String hash;
+    private final File file;
+
+    private int references;
+
+    // The library lists of the extensions that declared this library, each in declaration order. Sorted by extension
+    // name, so which library wins doesn't depend on the order the extensions happened to load in
+    private volatile List<Map.Entry<String, List<ExtensionLibraryClassLoader>>> groups = List.of();
+
+    ExtensionLibraryClassLoader(@NotNull String name, @NotNull String hash, @NotNull File file, ClassLoader parent) throws IOException {
+        super("Library-" + name, new URL[]{file.toURI().toURL()}, parent);
+
+        this.hash = hash;
+        this.file = file;
+    }
+
+    @NotNull String getHash() {
+        return this.hash;
+    }
+
+    @NotNull File getFile() {
+        return this.file;
+    }
+
+    int retain() {
+        return ++this.references;
+    }
+
+    int release() {
+        return --this.references;
+    }
+
+    // Both are only called by ExtensionLibraries, under its lock
+    void addGroup(@NotNull String extension, @NotNull List<ExtensionLibraryClassLoader> group) {
+        List<Map.Entry<String, List<ExtensionLibraryClassLoader>>> groups = new ArrayList<>(this.groups);
+        groups.add(Map.entry(extension, group));
+        groups.sort(Map.Entry.comparingByKey(String.CASE_INSENSITIVE_ORDER));
+        this.groups = List.copyOf(groups);
+    }
+
+    void removeGroup(@NotNull List<ExtensionLibraryClassLoader> group) {
+        List<Map.Entry<String, List<ExtensionLibraryClassLoader>>> groups = new ArrayList<>(this.groups);
+        groups.removeIf((other) -> other.getValue() == group);
+        this.groups = List.copyOf(groups);
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        // Checked up front, so a class we don't have costs a lookup instead of a ClassNotFoundException per library
+        if (this.findResource(name.replace('.', '/').concat(".class")) != null) return super.findClass(name);
+
+        // Libraries depend on each other (netty-buffer on netty-common), so the other libraries of the same extension are tried
+        for (Map.Entry<String, List<ExtensionLibraryClassLoader>> group : this.groups) {
+            for (ExtensionLibraryClassLoader library : group.getValue()) {
+                if (library == this) continue;
+
+                Class<?> result = library.findOwnClass(name);
+                if (result != null) return result;
+            }
+        }
+
+        // Reached from the JVM resolving a library class, a real miss that should keep its stack trace
+        throw new ClassNotFoundException(name);
+    }
+
+    // Only this library's own jar, so library lookups can't go around in circles
+    Class<?> findOwnClass(String name) {
+        Class<?> loaded = this.findLoadedClass(name);
+        if (loaded != null) return loaded;
+
+        // Never take the lock for classes we don't have, two libraries missing the same class would otherwise deadlock
+        if (this.findResource(name.replace('.', '/').concat(".class")) == null) return null;
+
+        synchronized (this.getClassLoadingLock(name)) {
+            Class<?> result = this.findLoadedClass(name);
+            if (result != null) return result;
+
+            try {
+                return super.findClass(name);
+            } catch (ClassNotFoundException | LinkageError exception) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ExtensionLibraryClassLoader{" +
+                "file=" + this.file +
+                ", hash=" + this.hash +
+                '}';
+    }
+}
@@ -0,0 +1,153 @@
+package mc.replay.extensions;
+
+import mc.replay.extensions.exception.ExtensionLifecycleException;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+// Enables extensions in dependency waves and disables them in reverse, every extension of a wave runs concurrently
+final class ExtensionLifecycle {
+
+    // Set while an extension's callback runs, lifecycle calls it makes can't wait for the queue it is blocking
+    private static final ThreadLocal<Boolean> IN_CALLBACK = new ThreadLocal<>();
+
+    private final ExecutorService executor;
+    private volatile Duration timeout = Duration.ofSeconds(30);
+
+    ExtensionLifecycle() {
+        // Callbacks mostly wait on I/O, so don't size this by the core count alone
+        this.executor = ExtensionLoaderUtils.createExecutor("Extension-Lifecycle", Math.max(8, Runtime.getRuntime().availableProcessors()));
+    }
+
+    void setTimeout(@NotNull Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+    static boolean isInCallback() {
+        return IN_CALLBACK.get() != null;
+    }
+
+    // Extensions named in 'others' satisfy dependencies without being enabled or disabled here
+    @NotNull CompletableFuture<Void> enable(@NotNull Collection<JavaExtensionClassLoader> loaders, @NotNull Collection<String> others) {
+        Map<String, Throwable> failures = new ConcurrentHashMap<>();
+        List<List<JavaExtensionClassLoader>> waves = getWaves(loaders, others, failures);
+
+        CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
+        for (List<JavaExtensionClassLoader> wave : waves) {
+            future = future.thenCompose((ignored) -> this.run(wave, true, failures));
+        }
+
+        return future.thenCompose((ignored) -> complete("enable", failures));
+    }
+
+    @NotNull CompletableFuture<Void> disable(@NotNull Collection<JavaExtensionClassLoader> loaders, @NotNull Collection<String> others) {
+        Map<String, Throwable> failures = new ConcurrentHashMap<>();
+        List<List<JavaExtensionClassLoader>> waves = getWaves(loaders, others, failures);
+        Collections.reverse(waves);
+
+        CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
+        for (List<JavaExtensionClassLoader> wave : waves) {
+            future = future.thenCompose((ignored) -> this.run(wave, false, failures));
+        }
+
+        return future.thenCompose((ignored) -> complete("disable", failures));
+    }
+
+    private CompletableFuture<Void> run(List<JavaExtensionClassLoader> wave, boolean enable, Map<String, Throwable> failures) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(wave.size());
+
+        for (JavaExtensionClassLoader loader : wave) {
+            JavaExtension extension = loader.getExtension();
+            if (extension.isEnabled() == enable) continue;
+
+            // Enabling on top of a dependency that failed would only fail later, and less clearly
+            if (enable) {
+                String failedDependency = getFailedDependency(loader, failures);
+                if (failedDependency != null) {
+                    failures.put(extension.getName(), new ExtensionLifecycleException("Extension '%s' depends on extension '%s' which could not be enabled".formatted(extension.getName(), failedDependency)));
+                    continue;
+                }
+            }
+
+            Duration configured = enable ? extension.getConfig().getEnableTimeout() : extension.getConfig().getDisableTimeout();
+            Duration timeout = (configured != null) ? configured : this.timeout;
+
+            // A timeout only stops waiting, a callback that hangs keeps its lifecycle thread until it returns
+            CompletableFuture<Void> future = CompletableFuture.supplyAsync(() -> {
+                        IN_CALLBACK.set(Boolean.TRUE);
+                        try {
+                            return enable ? extension.onEnableAsync() : extension.onDisableAsync();
+                        } finally {
+                            IN_CALLBACK.remove();
+                        }
+                    }, this.executor)
+                    .thenCompose((result) -> (result != null) ? result : CompletableFuture.completedFuture(null))
+                    .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                    .handle((ignored, throwable) -> {
+                        // A disabled extension counts as disabled even if its callback failed, it is about to be unloaded anyway
+                        if (throwable == null || !enable) extension.setEnabled(enable);
+                        if (throwable == null) return null;
+
+                        Throwable cause = (throwable instanceof CompletionException && throwable.getCause() != null) ? throwable.getCause() : throwable;
+                        failures.put(extension.getName(), (cause instanceof TimeoutException)
+                                ? new ExtensionLifecycleException("Extension '%s' did not %s within %d ms".formatted(extension.getName(), enable ? "enable" : "disable", timeout.toMillis()))
+                                : new ExtensionLifecycleException("Could not %s extension '%s'".formatted(enable ? "enable" : "disable", extension.getName()), cause));
+                        return null;
+                    });
+
+            futures.add(future);
+        }
+
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new));
+    }
+
+    private static String getFailedDependency(JavaExtensionClassLoader loader, Map<String, Throwable> failures) {
+        for (String dependency : loader.getDescriptor().getConfig().getDepends()) {
+            for (String failed : failures.keySet()) {
+                if (failed.equalsIgnoreCase(dependency)) return failed;
+            }
+        }
+
+        return null;
+    }
+
+    private static CompletableFuture<Void> complete(String action, Map<String, Throwable> failures) {
+        if (failures.isEmpty()) return CompletableFuture.completedFuture(null);
+
+        ExtensionLifecycleException exception = new ExtensionLifecycleException("Could not %s %d extension(s): %s".formatted(
+                action,
+                failures.size(),
+                failures.keySet().stream().sorted().collect(Collectors.joining(", "))
+        ));
+        failures.values().forEach(exception::addSuppressed);
+        return CompletableFuture.failedFuture(exception);
+    }
+
+    private static List<List<JavaExtensionClassLoader>> getWaves(Collection<JavaExtensionClassLoader> loaders, Collection<String> others, Map<String, Throwable> failures) {
+        Map<ExtensionDescriptor, JavaExtensionClassLoader> loaderByDescriptor = new LinkedHashMap<>();
+        for (JavaExtensionClassLoader loader : loaders) {
+            loaderByDescriptor.put(loader.getDescriptor(), loader);
+        }
+
+        // Everything was loaded already, so this only fails if a dependency was unloaded in the meantime
+        ExtensionDependencyGraph graph = new ExtensionDependencyGraph(loaderByDescriptor.keySet(), others);
+        for (ExtensionDescriptor descriptor : loaderByDescriptor.keySet()) {
+            Throwable failure = graph.getFailures().get(descriptor.getFile());
+            if (failure != null) failures.put(descriptor.getName(), failure);
+        }
+
+        List<List<JavaExtensionClassLoader>> waves = new ArrayList<>();
+        for (List<ExtensionDescriptor> wave : graph.getWaves()) {
+            waves.add(wave.stream().map(loaderByDescriptor::get).collect(Collectors.toList()));
+        }
+
+        return waves;
+    }
+}
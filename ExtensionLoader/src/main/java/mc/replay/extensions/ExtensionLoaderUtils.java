@@ -7,30 +7,90 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.regex.Pattern;
+import java.util.zip.ZipFile;
 
 final class ExtensionLoaderUtils {
 
+    // Yaml instances aren't thread safe, but are fine to reuse on the same thread
+    private static final ThreadLocal<Yaml> YAML = ThreadLocal.withInitial(Yaml::new);
+
     private ExtensionLoaderUtils() {
     }
 
-    static JarFile createJarFile(File file) throws IOException {
-        // Enable multi-release jars for Java 9+
-        try {
-            final java.lang.reflect.Method runtimeVersionMethod = JarFile.class.getMethod("runtimeVersion");
-            final Object runtimeVersion = runtimeVersionMethod.invoke(null);
-            @SuppressWarnings("JavaReflectionMemberAccess") final Constructor<JarFile> constructor = JarFile.class.getConstructor(File.class, boolean.class, int.class, runtimeVersion.getClass());
-            return constructor.newInstance(file, true, java.util.zip.ZipFile.OPEN_READ, runtimeVersion);
-        } catch (Exception ignored) {
-            return new JarFile(file);
+    static JarFile createJarFile(File file, boolean verify) throws IOException {
+        // Enable multi-release jars
+        return new JarFile(file, verify, ZipFile.OPEN_READ, JarFile.runtimeVersion());
+    }
+
+    static ExecutorService createExecutor(String name, int threads) {
+        AtomicInteger counter = new AtomicInteger();
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (runnable) -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Long-lived pools shouldn't keep idle threads around
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    // The only pattern dialect, used by exports, preload and transformers:
+    // 'a.b' matches only package a.b, 'a.b.*' its direct subpackages and 'a.b.**' a.b and all of its subpackages
+    static Predicate<String> getPackageFilter(List<String> globs) {
+        List<Pattern> patterns = new ArrayList<>(globs.size());
+
+        for (String glob : globs) {
+            boolean recursive = glob.endsWith(".**");
+            if (recursive) glob = glob.substring(0, glob.length() - 3);
+
+            patterns.add(Pattern.compile(toRegex(glob) + (recursive ? "(\\..*)?" : "")));
+        }
+
+        return (packageName) -> {
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(packageName).matches()) return true;
+            }
+
+            return false;
+        };
+    }
+
+    // '**' matches anything, '*' anything but a dot
+    private static String toRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+
+            if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i++;
+            } else if (c == '*') {
+                regex.append("[^.]*");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
         }
+
+        return regex.toString();
     }
 
-    static ExtensionConfig getConfig(File file) throws InvalidConfigurationException {
-        try (JarFile jarFile = createJarFile(file)) {
+    static ExtensionDescriptor getDescriptor(File file, JarFingerprint fingerprint) throws InvalidConfigurationException {
+        try (JarFile jarFile = createJarFile(file, false)) {
             JarEntry entry = jarFile.getJarEntry("extension.yml");
             if (entry == null) {
                 throw new InvalidConfigurationException(new FileNotFoundException("Jar does not contain extension.yml"));
@@ -46,16 +106,35 @@ final class ExtensionLoaderUtils {
             if (config.getVersion() == null)
                 throw new InvalidConfigurationException("Extension version cannot be null (%s)".formatted(file.getName()));
 
-            return config;
+            List<String> errors = config.validate();
+            if (!errors.isEmpty())
+                throw new InvalidConfigurationException("Invalid extension.yml in %s: %s".formatted(file.getName(), String.join(", ", errors)));
+
+            return new ExtensionDescriptor(file, config, fingerprint, getClassNames(jarFile));
         } catch (IOException exception) {
             throw new InvalidConfigurationException(exception);
         }
     }
 
+    private static List<String> getClassNames(JarFile jarFile) {
+        List<String> classNames = new ArrayList<>();
+
+        Enumeration<JarEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+            String entryName = entries.nextElement().getName();
+            if (!entryName.endsWith(".class") || entryName.startsWith("META-INF/") || entryName.endsWith("module-info.class")) {
+                continue;
+            }
+
+            classNames.add(entryName.substring(0, entryName.length() - ".class".length()).replace('/', '.'));
+        }
+
+        return classNames;
+    }
+
     private static ExtensionConfig getConfig(JarFile jarFile, JarEntry entry) {
-        Yaml yaml = new Yaml();
         try (InputStream inputStream = jarFile.getInputStream(entry)) {
-            Map<String, Object> data = yaml.load(inputStream);
+            Map<String, Object> data = YAML.get().load(inputStream);
             return new ExtensionConfig(data);
         } catch (Exception exception) {
             exception.printStackTrace();
@@ -0,0 +1,120 @@
+package mc.replay.extensions;
+
+import mc.replay.extensions.exception.InvalidExtensionException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public final class ExtensionRescanReport {
+
+    private final List<Change> added;
+    private final List<Change> upgraded;
+    private final List<Change> removed;
+    private final List<Change> reloaded;
+    private final List<Change> lost;
+    private final List<String> unchanged;
+    private final Map<File, InvalidExtensionException> failures;
+
+    ExtensionRescanReport(@NotNull List<Change> added, @NotNull List<Change> upgraded, @NotNull List<Change> removed, @NotNull List<Change> reloaded,
+                          @NotNull List<Change> lost, @NotNull List<String> unchanged, @NotNull Map<File, InvalidExtensionException> failures) {
+        this.added = List.copyOf(added);
+        this.upgraded = List.copyOf(upgraded);
+        this.removed = List.copyOf(removed);
+        this.reloaded = List.copyOf(reloaded);
+        this.lost = List.copyOf(lost);
+        this.unchanged = List.copyOf(unchanged);
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    public @NotNull Collection<Change> getAdded() {
+        return this.added;
+    }
+
+    public @NotNull Collection<Change> getUpgraded() {
+        return this.upgraded;
+    }
+
+    public @NotNull Collection<Change> getRemoved() {
+        return this.removed;
+    }
+
+    // Dependents of upgraded extensions, their own jar did not change
+    public @NotNull Collection<Change> getReloaded() {
+        return this.reloaded;
+    }
+
+    // Upgrades and their dependents that were unloaded but failed to load again, they are no longer loaded at all.
+    // The failure is in getFailures() under the same file.
+    public @NotNull Collection<Change> getLost() {
+        return this.lost;
+    }
+
+    public @NotNull Collection<String> getUnchanged() {
+        return this.unchanged;
+    }
+
+    // Jars whose new version can't even be read keep their previous version loaded, see getLost() for the others
+    public @NotNull Map<File, InvalidExtensionException> getFailures() {
+        return this.failures;
+    }
+
+    public boolean hasChanges() {
+        return !this.added.isEmpty() || !this.upgraded.isEmpty() || !this.removed.isEmpty() || !this.reloaded.isEmpty() || !this.lost.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ExtensionRescanReport{" +
+                "added=" + this.added +
+                ", upgraded=" + this.upgraded +
+                ", removed=" + this.removed +
+                ", reloaded=" + this.reloaded +
+                ", lost=" + this.lost +
+                ", unchanged=" + this.unchanged.size() +
+                ", failures=" + this.failures.keySet() +
+                '}';
+    }
+
+    public static final class Change {
+
+        private final String name;
+        private final String previousVersion;
+        private final String version;
+        private final File file;
+
+        Change(@NotNull String name, @Nullable String previousVersion, @Nullable String version, @NotNull File file) {
+            this.name = name;
+            this.previousVersion = previousVersion;
+            this.version = version;
+            this.file = file;
+        }
+
+        public @NotNull String getName() {
+            return this.name;
+        }
+
+        // Null for added extensions
+        public @Nullable String getPreviousVersion() {
+            return this.previousVersion;
+        }
+
+        // Null for removed and lost extensions
+        public @Nullable String getVersion() {
+            return this.version;
+        }
+
+        public @NotNull File getFile() {
+            return this.file;
+        }
+
+        @Override
+        public String toString() {
+            return this.name + " " + ((this.previousVersion != null) ? this.previousVersion : "-") + " -> " + ((this.version != null) ? this.version : "-");
+        }
+    }
+}
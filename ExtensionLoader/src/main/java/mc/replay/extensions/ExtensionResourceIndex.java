@@ -0,0 +1,81 @@
+package mc.replay.extensions;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+
+// Entry names of an extension jar so misses never touch the zip, plus the contents of recently read small resources
+final class ExtensionResourceIndex {
+
+    private static final int MAX_CACHED_RESOURCE_SIZE = 64 * 1024;
+    private static final int MAX_CACHED_BYTES = 1024 * 1024;
+
+    private final JarFile jarFile;
+    private final Set<String> names;
+
+    private final Map<String, byte[]> cache = new LinkedHashMap<>(16, 0.75F, true);
+    private int cachedBytes;
+
+    ExtensionResourceIndex(@NotNull JarFile jarFile) {
+        this.jarFile = jarFile;
+
+        // Versioned names, so multi-release jars are indexed the way getJarEntry resolves them
+        this.names = jarFile.versionedStream()
+                .map(ZipEntry::getName)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    boolean contains(@NotNull String name) {
+        return this.names.contains(name);
+    }
+
+    @Nullable InputStream getInputStream(@NotNull String name) throws IOException {
+        if (!this.names.contains(name)) return null;
+
+        synchronized (this.cache) {
+            byte[] bytes = this.cache.get(name);
+            if (bytes != null) return new ByteArrayInputStream(bytes);
+        }
+
+        JarEntry entry = this.jarFile.getJarEntry(name);
+        if (entry == null || entry.isDirectory()) return null;
+
+        long size = entry.getSize();
+        if (size < 0 || size > MAX_CACHED_RESOURCE_SIZE) {
+            return this.jarFile.getInputStream(entry);
+        }
+
+        byte[] bytes;
+        try (InputStream in = this.jarFile.getInputStream(entry)) {
+            bytes = in.readAllBytes();
+        }
+
+        this.cache(name, bytes);
+        return new ByteArrayInputStream(bytes);
+    }
+
+    private void cache(String name, byte[] bytes) {
+        synchronized (this.cache) {
+            byte[] previous = this.cache.put(name, bytes);
+            if (previous != null) this.cachedBytes -= previous.length;
+            this.cachedBytes += bytes.length;
+
+            Iterator<byte[]> iterator = this.cache.values().iterator();
+            while (this.cachedBytes > MAX_CACHED_BYTES && iterator.hasNext()) {
+                this.cachedBytes -= iterator.next().length;
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package mc.replay.extensions;
+
+import org.jetbrains.annotations.NotNull;
+
+// Only covers work an extension ran on its own executor, not calls made into it from other threads
+public final class ExtensionResourceUsage {
+
+    private final String name;
+    private final boolean virtualThreads;
+    private final long submittedTasks;
+    private final long completedTasks;
+    private final long failedTasks;
+    private final int queuedTasks;
+    private final int activeTasks;
+    private final long cpuNanos;
+    private final long allocatedBytes;
+    private final long totalLatencyNanos;
+    private final long maxLatencyNanos;
+
+    ExtensionResourceUsage(@NotNull String name, boolean virtualThreads, long submittedTasks, long completedTasks, long failedTasks, int queuedTasks, int activeTasks,
+                           long cpuNanos, long allocatedBytes, long totalLatencyNanos, long maxLatencyNanos) {
+        this.name = name;
+        this.virtualThreads = virtualThreads;
+        this.submittedTasks = submittedTasks;
+        this.completedTasks = completedTasks;
+        this.failedTasks = failedTasks;
+        this.queuedTasks = queuedTasks;
+        this.activeTasks = activeTasks;
+        this.cpuNanos = cpuNanos;
+        this.allocatedBytes = allocatedBytes;
+        this.totalLatencyNanos = totalLatencyNanos;
+        this.maxLatencyNanos = maxLatencyNanos;
+    }
+
+    public @NotNull String getName() {
+        return this.name;
+    }
+
+    public boolean isVirtualThreads() {
+        return this.virtualThreads;
+    }
+
+    public long getSubmittedTasks() {
+        return this.submittedTasks;
+    }
+
+    public long getCompletedTasks() {
+        return this.completedTasks;
+    }
+
+    // Tasks passed to execute() that threw, tasks passed to submit() report their failure through the future
+    public long getFailedTasks() {
+        return this.failedTasks;
+    }
+
+    public int getQueuedTasks() {
+        return this.queuedTasks;
+    }
+
+    public int getActiveTasks() {
+        return this.activeTasks;
+    }
+
+    public long getCpuNanos() {
+        return this.cpuNanos;
+    }
+
+    public long getAllocatedBytes() {
+        return this.allocatedBytes;
+    }
+
+    // Time between submitting a task and a thread starting it
+    public long getAverageLatencyNanos() {
+        long started = this.submittedTasks - this.queuedTasks;
+        return (started > 0) ? this.totalLatencyNanos / started : 0;
+    }
+
+    public long getMaxLatencyNanos() {
+        return this.maxLatencyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ExtensionResourceUsage{" +
+                "name=" + this.name +
+                ", virtualThreads=" + this.virtualThreads +
+                ", submittedTasks=" + this.submittedTasks +
+                ", completedTasks=" + this.completedTasks +
+                ", failedTasks=" + this.failedTasks +
+                ", queuedTasks=" + this.queuedTasks +
+                ", activeTasks=" + this.activeTasks +
+                ", cpuNanos=" + this.cpuNanos +
+                ", allocatedBytes=" + this.allocatedBytes +
+                ", averageLatencyNanos=" + this.getAverageLatencyNanos() +
+                ", maxLatencyNanos=" + this.maxLatencyNanos +
+                '}';
+    }
+}
@@ -0,0 +1,159 @@
+package mc.replay.extensions;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+// The transformers that apply to one extension, in registration order. Output is cached on disk under a key made of
+// the jar's fingerprint and every transformer's name and version, so each class is transformed once per jar version.
+final class ExtensionTransformChain {
+
+    static final String FOLDER_NAME = ".extension-transform";
+
+    private final String extensionName;
+    private final List<ExtensionClassTransformer> transformers;
+    private final List<Predicate<String>> packageFilters;
+    private final File cacheFolder;
+
+    private ExtensionTransformChain(String extensionName, List<ExtensionClassTransformer> transformers, List<Predicate<String>> packageFilters, File cacheFolder) {
+        this.extensionName = extensionName;
+        this.transformers = transformers;
+        this.packageFilters = packageFilters;
+        this.cacheFolder = cacheFolder;
+    }
+
+    // Null if no transformer applies, so untouched extensions don't pay anything
+    static @Nullable ExtensionTransformChain create(@NotNull File extensionFolder, @NotNull ExtensionDescriptor descriptor, @NotNull Collection<ExtensionClassTransformer> registered) {
+        List<ExtensionClassTransformer> transformers = new ArrayList<>();
+        List<Predicate<String>> packageFilters = new ArrayList<>();
+
+        for (ExtensionClassTransformer transformer : registered) {
+            Collection<String> extensions = transformer.getExtensions();
+            if (!extensions.isEmpty() && extensions.stream().noneMatch(descriptor.getName()::equalsIgnoreCase)) continue;
+
+            transformers.add(transformer);
+            packageFilters.add(transformer.getPackages().isEmpty() ? (packageName) -> true : ExtensionLoaderUtils.getPackageFilter(transformer.getPackages()));
+        }
+
+        if (transformers.isEmpty()) return null;
+
+        File jar = descriptor.getFile();
+        String prefix = jar.getName().substring(0, jar.getName().length() - ".jar".length()) + "-";
+        File folder = new File(extensionFolder, FOLDER_NAME);
+        File cacheFolder = new File(folder, prefix + getKey(descriptor.getFingerprint(), transformers));
+
+        deleteStale(folder, prefix, cacheFolder);
+        return new ExtensionTransformChain(descriptor.getName(), List.copyOf(transformers), List.copyOf(packageFilters), cacheFolder);
+    }
+
+    byte @NotNull [] transform(@NotNull String className, byte @NotNull [] classBytes) {
+        int dot = className.lastIndexOf('.');
+        String packageName = (dot != -1) ? className.substring(0, dot) : "";
+
+        boolean applies = false;
+        for (int i = 0; !applies && i < this.packageFilters.size(); i++) {
+            applies = this.packageFilters.get(i).test(packageName);
+        }
+
+        if (!applies) return classBytes;
+
+        // An empty file marks a class that no transformer changed
+        Path cached = new File(this.cacheFolder, className.replace('.', '/') + ".class").toPath();
+        if (Files.isRegularFile(cached)) {
+            try {
+                byte[] bytes = Files.readAllBytes(cached);
+                return (bytes.length == 0) ? classBytes : bytes;
+            } catch (IOException exception) {
+                exception.printStackTrace();
+            }
+        }
+
+        byte[] result = classBytes;
+        boolean changed = false;
+        boolean cacheable = true;
+
+        for (int i = 0; i < this.transformers.size(); i++) {
+            if (!this.packageFilters.get(i).test(packageName)) continue;
+
+            ExtensionClassTransformer transformer = this.transformers.get(i);
+            try {
+                byte[] transformed = transformer.transform(this.extensionName, className, result);
+                if (transformed != null) {
+                    result = transformed;
+                    changed = true;
+                }
+            } catch (Exception exception) {
+                // The class still loads, just without this transformer, and isn't cached so the next start tries again
+                new IllegalStateException("Transformer '%s' failed on class '%s' of extension '%s'".formatted(transformer.getName(), className, this.extensionName), exception).printStackTrace();
+                cacheable = false;
+            }
+        }
+
+        if (cacheable) write(cached, changed ? result : new byte[0]);
+        return result;
+    }
+
+    private static void write(Path file, byte[] bytes) {
+        try {
+            Files.createDirectories(file.getParent());
+
+            Path temporary = Files.createTempFile(file.getParent(), "class-", ".tmp");
+            try {
+                Files.write(temporary, bytes);
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    private static String getKey(JarFingerprint fingerprint, List<ExtensionClassTransformer> transformers) {
+        StringBuilder key = new StringBuilder()
+                .append((fingerprint.getHash() != null) ? fingerprint.getHash() : fingerprint.getSize() + ":" + fingerprint.getLastModified());
+
+        for (ExtensionClassTransformer transformer : transformers) {
+            key.append('\n').append(transformer.getName()).append('@').append(transformer.getVersion()).append(transformer.getPackages());
+        }
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    // Output for older versions of the jar or of the transformers is never read again
+    private static void deleteStale(File folder, String prefix, File current) {
+        File[] files = folder.listFiles();
+        if (files == null) return;
+
+        for (File file : files) {
+            if (!file.getName().startsWith(prefix) || file.equals(current)) continue;
+
+            // Only exactly '<jar name>-<key>', so 'a-b.jar' doesn't delete the cache of 'a.jar'
+            if (file.getName().length() != prefix.length() + 32) continue;
+
+            try (Stream<Path> paths = Files.walk(file.toPath())) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(path);
+                }
+            } catch (IOException exception) {
+                exception.printStackTrace();
+            }
+        }
+    }
+}
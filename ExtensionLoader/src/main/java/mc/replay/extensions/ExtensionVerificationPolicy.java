@@ -0,0 +1,13 @@
+package mc.replay.extensions;
+
+public enum ExtensionVerificationPolicy {
+
+    // Jars are opened without verifying signatures
+    NONE,
+
+    // The SHA-256 of every jar has to be one of the loader's trusted digests
+    SHA256,
+
+    // Every entry has to be signed, by one of the loader's trusted certificates if any are configured
+    SIGNED
+}
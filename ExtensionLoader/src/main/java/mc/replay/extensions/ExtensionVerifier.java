@@ -0,0 +1,130 @@
+package mc.replay.extensions;
+
+import mc.replay.extensions.exception.InvalidExtensionException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.security.cert.Certificate;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+// Runs during discovery, so class definition only has to reuse the CodeSource computed here
+final class ExtensionVerifier {
+
+    private ExtensionVerifier() {
+    }
+
+    // Unchanged under NONE, the class loader then takes the signers of every entry as it reads them
+    static @NotNull ExtensionDescriptor verify(@NotNull ExtensionVerificationPolicy policy, @NotNull Set<String> trustedDigests, @NotNull Set<Certificate> trustedCertificates,
+                                               @NotNull ExtensionDescriptor descriptor) throws IOException, InvalidExtensionException {
+        File file = descriptor.getFile();
+
+        switch (policy) {
+            case SHA256 -> {
+                // The fingerprint only has a hash when the descriptor cache is hashing
+                String hash = (descriptor.getFingerprint().getHash() != null) ? descriptor.getFingerprint().getHash() : JarFingerprint.sha256(file);
+                if (!trustedDigests.contains(hash)) {
+                    throw new InvalidExtensionException("SHA-256 digest %s of '%s' is not trusted".formatted(hash, file.getName()));
+                }
+
+                return descriptor.withVerification(new CodeSource(file.toURI().toURL(), (CodeSigner[]) null), hash);
+            }
+            case SIGNED -> {
+                // The digest has to be of the jar whose signatures were checked, so the file may not be replaced in between
+                Object fileKey = getFileKey(file);
+                String hash = JarFingerprint.sha256(file);
+                CodeSource codeSource = verifySignature(trustedCertificates, file);
+                if (!Objects.equals(fileKey, getFileKey(file))) {
+                    throw new InvalidExtensionException("'%s' was replaced while it was verified".formatted(file.getName()));
+                }
+
+                return descriptor.withVerification(codeSource, hash);
+            }
+            default -> {
+                return descriptor;
+            }
+        }
+    }
+
+    // The class loader reopens the jar after discovery verified it. The file it opened, identified by the key taken
+    // before opening, must still be the one at this path and have the verified digest, or a swapped jar would load unchecked.
+    static void verifyOpened(@NotNull ExtensionDescriptor descriptor, @Nullable Object fileKey) throws IOException, InvalidExtensionException {
+        File file = descriptor.getFile();
+
+        String hash = JarFingerprint.sha256(file);
+        if (!hash.equals(descriptor.getVerifiedDigest()) || !Objects.equals(fileKey, getFileKey(file))) {
+            throw new InvalidExtensionException("'%s' changed after it was verified".formatted(file.getName()));
+        }
+    }
+
+    // Identifies the file itself rather than its path (the inode on Unix), null where the file system has no such key
+    static @Nullable Object getFileKey(@NotNull File file) throws IOException {
+        return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+    }
+
+    private static CodeSource verifySignature(Set<Certificate> trustedCertificates, File file) throws IOException, InvalidExtensionException {
+        List<CodeSigner> signers = null;
+
+        try (JarFile jarFile = ExtensionLoaderUtils.createJarFile(file, true)) {
+            byte[] buffer = new byte[8192];
+
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                if (entry.isDirectory() || isSignatureFile(entry.getName())) continue;
+
+                // Signers are only known, and the digest only checked, once the entry was read completely
+                try (InputStream in = jarFile.getInputStream(entry)) {
+                    while (in.read(buffer) != -1) ;
+                } catch (SecurityException exception) {
+                    throw new InvalidExtensionException("Entry '%s' of '%s' doesn't match its signature".formatted(entry.getName(), file.getName()), exception);
+                }
+
+                CodeSigner[] entrySigners = entry.getCodeSigners();
+                if (entrySigners == null) {
+                    throw new InvalidExtensionException("Entry '%s' of '%s' is not signed".formatted(entry.getName(), file.getName()));
+                }
+
+                // Only signers of every single entry vouch for the whole jar
+                if (signers == null) signers = new ArrayList<>(Arrays.asList(entrySigners));
+                else signers.retainAll(Arrays.asList(entrySigners));
+            }
+        } catch (SecurityException exception) {
+            throw new InvalidExtensionException("Invalid signature in '%s'".formatted(file.getName()), exception);
+        }
+
+        if (signers == null || signers.isEmpty()) {
+            throw new InvalidExtensionException("'%s' is not signed by one signer for all of its entries".formatted(file.getName()));
+        }
+
+        if (!trustedCertificates.isEmpty() && signers.stream().noneMatch((signer) -> isTrusted(signer, trustedCertificates))) {
+            throw new InvalidExtensionException("'%s' is not signed by a trusted certificate".formatted(file.getName()));
+        }
+
+        return new CodeSource(file.toURI().toURL(), signers.toArray(CodeSigner[]::new));
+    }
+
+    private static boolean isTrusted(CodeSigner signer, Set<Certificate> trustedCertificates) {
+        for (Certificate certificate : signer.getSignerCertPath().getCertificates()) {
+            if (trustedCertificates.contains(certificate)) return true;
+        }
+
+        return false;
+    }
+
+    private static boolean isSignatureFile(String name) {
+        if (!name.startsWith("META-INF/") || name.indexOf('/', "META-INF/".length()) != -1) return false;
+
+        String upperCase = name.toUpperCase(Locale.ROOT);
+        return upperCase.equals("META-INF/MANIFEST.MF") || upperCase.startsWith("META-INF/SIG-")
+                || upperCase.endsWith(".SF") || upperCase.endsWith(".RSA") || upperCase.endsWith(".DSA") || upperCase.endsWith(".EC");
+    }
+}
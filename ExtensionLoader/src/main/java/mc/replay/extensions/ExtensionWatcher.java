@@ -0,0 +1,85 @@
+package mc.replay.extensions;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+final class ExtensionWatcher implements Closeable {
+
+    // Copying a jar fires several events, wait until the folder has been quiet for this long
+    private static final long SETTLE_MILLIS = 500;
+
+    private final JavaExtensionLoader loader;
+    private final File folder;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    ExtensionWatcher(@NotNull JavaExtensionLoader loader, @NotNull File folder) throws IOException {
+        this.loader = loader;
+        this.folder = folder;
+        this.watchService = folder.toPath().getFileSystem().newWatchService();
+
+        folder.toPath().register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+        this.thread = new Thread(this::run, "Extension-Watcher");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        this.thread.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.running = false;
+        this.watchService.close();
+        this.thread.interrupt();
+    }
+
+    private void run() {
+        Set<File> changed = new LinkedHashSet<>();
+
+        while (this.running) {
+            try {
+                WatchKey key = changed.isEmpty()
+                        ? this.watchService.take()
+                        : this.watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+
+                if (key == null) {
+                    this.reload(changed);
+                    changed.clear();
+                    continue;
+                }
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (!(event.context() instanceof Path path)) continue;
+                    if (!path.toString().endsWith(".jar")) continue;
+
+                    changed.add(new File(this.folder, path.toString()));
+                }
+
+                key.reset();
+            } catch (InterruptedException | ClosedWatchServiceException exception) {
+                return;
+            }
+        }
+    }
+
+    private void reload(Set<File> files) {
+        try {
+            synchronized (this.loader.lifecycleLock) {
+                this.loader.reloadExtensions(files);
+            }
+        } catch (Exception exception) {
+            exception.printStackTrace();
+        }
+    }
+}
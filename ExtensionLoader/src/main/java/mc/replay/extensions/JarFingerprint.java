@@ -0,0 +1,86 @@
+package mc.replay.extensions;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Objects;
+
+final class JarFingerprint {
+
+    private final long size;
+    private final long lastModified;
+    private final String hash;
+
+    JarFingerprint(long size, long lastModified, @Nullable String hash) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.hash = hash;
+    }
+
+    static @NotNull JarFingerprint of(@NotNull File file, boolean hash) throws IOException {
+        return new JarFingerprint(file.length(), file.lastModified(), hash ? sha256(file) : null);
+    }
+
+    static @NotNull String sha256(@NotNull File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            byte[] buffer = new byte[8192];
+
+            while (true) {
+                int r = in.read(buffer);
+                if (r == -1) break;
+
+                digest.update(buffer, 0, r);
+            }
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    long getSize() {
+        return this.size;
+    }
+
+    long getLastModified() {
+        return this.lastModified;
+    }
+
+    @Nullable String getHash() {
+        return this.hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof JarFingerprint that)) return false;
+
+        return this.size == that.size && this.lastModified == that.lastModified && Objects.equals(this.hash, that.hash);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.size, this.lastModified, this.hash);
+    }
+
+    @Override
+    public String toString() {
+        return "JarFingerprint{" +
+                "size=" + this.size +
+                ", lastModified=" + this.lastModified +
+                ", hash=" + this.hash +
+                '}';
+    }
+}
@@ -1,61 +1,125 @@
 package mc.replay.extensions;
 
 import mc.replay.extensions.exception.InvalidExtensionException;
+import mc.replay.extensions.metrics.ExtensionMetricsListener;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.security.CodeSigner;
 import java.security.CodeSource;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 
 public final class JavaExtensionClassLoader extends URLClassLoader {
 
+    // Lock per class name instead of the whole loader, threads loading different classes don't wait on each other
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    static final long EXECUTOR_SHUTDOWN_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    // Every extension gets its own pool, so the default stays small instead of a pool per core per extension
+    private static final int DEFAULT_THREADS = 2;
+
     private final JavaExtensionLoader loader;
-    private final Map<String, Class<?>> classes = new ConcurrentHashMap<>();
+    private final ExtensionDescriptor descriptor;
 
     private final File file;
     private final URL url;
+    private final CodeSource codeSource;
     private final JarFile jarFile;
     private final Manifest manifest;
+    private final ExtensionResourceIndex resources;
+    private final List<ExtensionLibraryClassLoader> libraries;
+    private final ExtensionExecutor executor;
+    private final ExtensionTransformChain transformChain;
 
     private final JavaExtension extension;
 
-    JavaExtensionClassLoader(@NotNull JavaExtensionLoader loader, @NotNull File mainFolder, @NotNull File file, @NotNull ExtensionConfig config, @Nullable ClassLoader parent) throws IOException, InvalidExtensionException {
-        super("Extension-" + config.getName(), new URL[]{file.toURI().toURL()}, parent);
+    private volatile boolean closed;
+    private volatile CompletableFuture<Integer> preload;
+
+    JavaExtensionClassLoader(@NotNull JavaExtensionLoader loader, @NotNull File mainFolder, @NotNull ExtensionDescriptor descriptor, @Nullable ClassLoader parent) throws IOException, InvalidExtensionException {
+        super("Extension-" + descriptor.getName(), new URL[]{descriptor.getFile().toURI().toURL()}, parent);
+
+        ExtensionConfig config = descriptor.getConfig();
+        File file = descriptor.getFile();
+        ExtensionMetricsListener metrics = loader.getMetricsListener();
+        long start = System.nanoTime();
 
         this.loader = loader;
+        this.descriptor = descriptor;
         this.file = file;
 
-        this.jarFile = ExtensionLoaderUtils.createJarFile(file);
-        this.manifest = this.jarFile.getManifest();
+        // Without a policy signed jars are still verified as they are read, and each class gets its entry's signers.
+        // A verified unsigned jar has nothing left to check, signed ones keep verifying so entries can't be swapped afterwards.
+        CodeSource codeSource = descriptor.getCodeSource();
+        boolean verify = codeSource == null || codeSource.getCodeSigners() != null;
+        Object fileKey = (descriptor.getVerifiedDigest() != null) ? ExtensionVerifier.getFileKey(file) : null;
+        this.jarFile = ExtensionLoaderUtils.createJarFile(file, verify);
         this.url = file.toURI().toURL();
+        this.codeSource = codeSource;
+
+        try {
+            if (descriptor.getVerifiedDigest() != null) ExtensionVerifier.verifyOpened(descriptor, fileKey);
+
+            this.manifest = this.jarFile.getManifest();
+            this.resources = new ExtensionResourceIndex(this.jarFile);
+            this.transformChain = ExtensionTransformChain.create(mainFolder, descriptor, loader.transformers);
+            this.libraries = loader.libraries.acquire(descriptor, this.jarFile);
+        } catch (IOException | InvalidExtensionException | RuntimeException exception) {
+            this.jarFile.close();
+            super.close();
+            throw exception;
+        }
+
+        // Threads are only started once the extension submits work
+        this.executor = new ExtensionExecutor(descriptor.getName(), (config.getThreads() != null) ? config.getThreads() : DEFAULT_THREADS, config.isVirtualThreads());
+
+        this.loader.classFinder.addLoader(this);
+
+        metrics.classLoaderCreated(descriptor.getName(), System.nanoTime() - start);
 
         try {
+            // Define the main class first so the timing below only covers its static initializer
+            Class.forName(config.getMain(), false, this);
+
+            start = System.nanoTime();
             Class<?> clazz = Class.forName(config.getMain(), true, this);
             Class<? extends JavaExtension> javaExtensionClass = clazz.asSubclass(JavaExtension.class);
+            metrics.mainClassInitialized(descriptor.getName(), System.nanoTime() - start);
 
             JavaExtension extension;
             try {
+                start = System.nanoTime();
                 extension = this.getExtension(javaExtensionClass);
+                metrics.extensionConstructed(descriptor.getName(), System.nanoTime() - start);
             } catch (Exception exception) {
                 throw new InvalidExtensionException("Could not create extension instance for '%s'".formatted(this.file.getName()), exception);
             }
 
-            extension.init(loader, config, mainFolder);
+            extension.init(loader, config, mainFolder, this.executor);
 
             this.extension = extension;
         } catch (Exception exception) {
+            try {
+                this.close();
+            } catch (IOException closeException) {
+                exception.addSuppressed(closeException);
+            }
+
             throw new InvalidExtensionException("", exception);
         }
     }
@@ -64,20 +128,63 @@ public final class JavaExtensionClassLoader extends URLClassLoader {
         return this.extension;
     }
 
+    // Completes with the number of classes defined ahead of time, null if the extension doesn't preload
+    public @Nullable CompletableFuture<Integer> getPreload() {
+        return this.preload;
+    }
+
+    @NotNull ExtensionDescriptor getDescriptor() {
+        return this.descriptor;
+    }
+
+    @NotNull ExtensionResourceUsage getResourceUsage() {
+        return this.executor.getUsage();
+    }
+
+    @NotNull List<ExtensionLibraryClassLoader> getLibraries() {
+        return this.libraries;
+    }
+
+    @Nullable Class<?> getLoadedClass(@NotNull String name) {
+        return this.findLoadedClass(name);
+    }
+
+    // MissingClassException has no stack trace, it stays on the internal lookup path. Whoever asks the loader itself,
+    // through Class.forName or the JVM resolving a reference, gets a normal exception
     @Override
     protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
-        return this.loadClass0(name, resolve, true);
+        try {
+            return this.loadClass0(name, resolve, true);
+        } catch (MissingClassException exception) {
+            throw new ClassNotFoundException(name);
+        }
     }
 
     @Override
     public Class<?> findClass(String name) throws ClassNotFoundException {
-        if (name.startsWith("mc.replay.extensions.")) {
+        try {
+            return this.findClass0(name);
+        } catch (MissingClassException exception) {
             throw new ClassNotFoundException(name);
         }
+    }
+
+    private Class<?> findClass0(String name) throws ClassNotFoundException {
+        if (name.startsWith("mc.replay.extensions.")) {
+            throw new MissingClassException(name);
+        }
+
+        // Normally already held by loadClass, but findClass is also called directly
+        Object lock = this.getClassLoadingLock(name);
+        boolean held = Thread.holdsLock(lock);
+        long start = System.nanoTime();
 
-        Class<?> result = this.classes.get(name);
+        synchronized (lock) {
+            if (!held) this.loader.getMetricsListener().classLoadLockWait(this.descriptor.getName(), name, System.nanoTime() - start);
+
+            Class<?> result = this.findLoadedClass(name);
+            if (result != null) return result;
 
-        if (result == null) {
             String path = name.replace('.', '/').concat(".class");
             JarEntry entry = this.jarFile.getJarEntry(path);
 
@@ -85,66 +192,223 @@ public final class JavaExtensionClassLoader extends URLClassLoader {
                 byte[] classBytes;
 
                 try (InputStream in = this.jarFile.getInputStream(entry)) {
-                    ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, in.available()));
-                    byte[] buffer = new byte[8192];
-
-                    while (true) {
-                        int r = in.read(buffer);
-                        if (r == -1) break;
-
-                        out.write(buffer, 0, r);
-                    }
-
-                    classBytes = out.toByteArray();
+                    classBytes = readClassBytes(entry, in);
                 } catch (IOException exception) {
                     throw new ClassNotFoundException(name, exception);
                 }
 
+                // The metrics count what was read from the jar, not what a transformer turned it into
+                int bytesRead = classBytes.length;
+                if (this.transformChain != null) {
+                    classBytes = this.transformChain.transform(name, classBytes);
+                }
+
                 int dot = name.lastIndexOf('.');
                 if (dot != -1) {
-                    String packageName = name.substring(0, dot);
-                    Package packageByPackageName = this.getDefinedPackage(packageName);
-                    if (packageByPackageName == null) {
-                        try {
-                            if (this.manifest != null) {
-                                this.definePackage(packageName, this.manifest, this.url);
-                            } else {
-                                this.definePackage(packageName, null, null, null, null, null, null, null);
-                            }
-                        } catch (IllegalArgumentException exception) {
-                            throw new IllegalStateException("Cannot find package " + packageName);
-                        }
-                    }
+                    this.definePackage(name.substring(0, dot));
                 }
 
-                CodeSigner[] signers = entry.getCodeSigners();
-                CodeSource source = new CodeSource(this.url, signers);
+                try {
+                    // Entry signers are only known once the entry was read completely, which readClassBytes does
+                    CodeSource source = (this.codeSource != null) ? this.codeSource : new CodeSource(this.url, entry.getCodeSigners());
+                    result = this.defineClass(name, classBytes, 0, classBytes.length, source);
+                    this.loader.getMetricsListener().classDefined(this.descriptor.getName(), name, bytesRead);
+                } catch (LinkageError error) {
+                    // Bytecode generators can define into us through Lookup.defineClass, which doesn't take the class name lock
+                    result = this.findLoadedClass(name);
+                    if (result == null) throw error;
+                }
+            }
 
-                result = this.defineClass(name, classBytes, 0, classBytes.length, source);
+            // Declared libraries come after our own jar, so shaded copies keep working. The parent was already
+            // asked by loadClass, so only each library's own jar is searched, and a miss doesn't throw
+            for (int i = 0; result == null && i < this.libraries.size(); i++) {
+                result = this.libraries.get(i).findOwnClass(name);
             }
 
+            this.loader.getMetricsListener().findClass(this.descriptor.getName(), name, result != null);
+
             if (result == null) {
-                result = super.findClass(name);
+                throw new MissingClassException(name);
             }
 
-            this.classes.put(name, result);
+            return result;
         }
+    }
+
+    // Classes of one package are defined under different locks, the package may appear between the check and the define
+    private void definePackage(String packageName) {
+        if (this.getDefinedPackage(packageName) != null) return;
 
-        return result;
+        try {
+            if (this.manifest != null) {
+                this.definePackage(packageName, this.manifest, this.url);
+            } else {
+                this.definePackage(packageName, null, null, null, null, null, null, null);
+            }
+        } catch (IllegalArgumentException exception) {
+            if (this.getDefinedPackage(packageName) == null) {
+                throw new IllegalStateException("Cannot find package " + packageName);
+            }
+        }
+    }
+
+    void preload(@NotNull Executor executor) {
+        List<String> globs = this.descriptor.getConfig().getPreload();
+        if (globs.isEmpty() || this.preload != null) return;
+
+        Predicate<String> filter;
+        if (globs.stream().anyMatch((glob) -> glob.equalsIgnoreCase("all") || glob.equalsIgnoreCase("true") || glob.equals("**"))) {
+            filter = (className) -> true;
+        } else {
+            Predicate<String> packages = ExtensionLoaderUtils.getPackageFilter(globs.stream().filter((glob) -> !glob.equalsIgnoreCase("false")).toList());
+            filter = (className) -> packages.test((className.lastIndexOf('.') == -1) ? "" : className.substring(0, className.lastIndexOf('.')));
+        }
+
+        // Only defines the classes, their static initializers still run on first use
+        this.preload = CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            int loaded = 0;
+            int failed = 0;
+
+            for (String className : this.descriptor.getClassNames()) {
+                if (this.closed) break;
+                if (!filter.test(className) || this.findLoadedClass(className) != null) continue;
+
+                try {
+                    Class.forName(className, false, this);
+                    loaded++;
+                } catch (ClassNotFoundException | LinkageError exception) {
+                    // Usually an optional dependency that isn't installed, it fails the same way when used
+                    failed++;
+                }
+            }
+
+            this.loader.getMetricsListener().classesPreloaded(this.descriptor.getName(), loaded, failed, System.nanoTime() - start);
+            return loaded;
+        }, executor);
+    }
+
+    @Override
+    public URL findResource(String name) {
+        URL url = this.resources.contains(name) ? super.findResource(name) : null;
+
+        for (int i = 0; url == null && i < this.libraries.size(); i++) {
+            url = this.libraries.get(i).findResource(name);
+        }
+
+        return url;
+    }
+
+    @Override
+    public Enumeration<URL> findResources(String name) throws IOException {
+        List<URL> urls = new ArrayList<>();
+        if (this.resources.contains(name)) urls.addAll(Collections.list(super.findResources(name)));
+
+        for (ExtensionLibraryClassLoader library : this.libraries) {
+            urls.addAll(Collections.list(library.findResources(name)));
+        }
+
+        return Collections.enumeration(urls);
+    }
+
+    // Reads straight from the open jar instead of going through a jar URL connection, parent first like getResource
+    @Override
+    public InputStream getResourceAsStream(String name) {
+        Objects.requireNonNull(name);
+
+        ClassLoader parent = (this.getParent() != null) ? this.getParent() : ClassLoader.getPlatformClassLoader();
+        InputStream in = parent.getResourceAsStream(name);
+        if (in != null || this.closed) return in;
+
+        try {
+            in = this.resources.getInputStream(name);
+            if (in != null) return in;
+
+            for (ExtensionLibraryClassLoader library : this.libraries) {
+                URL url = library.findResource(name);
+                if (url != null) return url.openStream();
+            }
+        } catch (IOException exception) {
+            return null;
+        }
+
+        return null;
+    }
+
+    // Stops taking new tasks, close() waits for the ones already running
+    void shutdownExecutor() {
+        this.executor.shutdown0();
     }
 
     @Override
     public void close() throws IOException {
+        this.close(System.nanoTime() + EXECUTOR_SHUTDOWN_NANOS);
+    }
+
+    // Bulk unloads pass one deadline for all extensions, so their running tasks are waited for together
+    void close(long deadline) throws IOException {
+        if (this.closed) return;
+
+        this.closed = true;
+
+        // Running tasks still need our classes, so they get a moment before the jar is closed under them
+        this.executor.shutdown0();
+        try {
+            if (!this.executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) this.executor.shutdownNow0();
+        } catch (InterruptedException exception) {
+            this.executor.shutdownNow0();
+            Thread.currentThread().interrupt();
+        }
+
+        this.loader.classFinder.removeLoader(this);
+
         try {
             super.close();
         } finally {
-            this.jarFile.close();
+            try {
+                this.jarFile.close();
+            } finally {
+                this.loader.libraries.release(this.libraries);
+            }
         }
     }
 
     public Class<?> loadClass0(@NotNull String name, boolean resolve, boolean checkGlobal) throws ClassNotFoundException {
+        NegativeLookupCache negativeCache = this.loader.negativeCache;
+
+        if (checkGlobal) {
+            // Bytecode generators define classes into us directly, right after probing that the name is free
+            Class<?> loaded = this.findLoadedClass(name);
+            if (loaded != null) {
+                if (resolve) this.resolveClass(loaded);
+                return loaded;
+            }
+
+            if (negativeCache.isMissing(this, name)) {
+                throw new MissingClassException(name);
+            }
+        }
+
+        long generation = negativeCache.getGeneration();
+
+        // Parent first like super.loadClass, but taking the lock here measures the wait of threads loading the same
+        // class, and a miss in our own jar stays a stackless MissingClassException
+        Object lock = this.getClassLoadingLock(name);
+        boolean held = Thread.holdsLock(lock);
+        long start = System.nanoTime();
+
         try {
-            return super.loadClass(name, resolve);
+            synchronized (lock) {
+                if (!held) this.loader.getMetricsListener().classLoadLockWait(this.descriptor.getName(), name, System.nanoTime() - start);
+
+                Class<?> result = this.findLoadedClass(name);
+                if (result == null) result = this.findParentClass(name);
+                if (result == null) result = this.findClass0(name);
+
+                if (resolve) this.resolveClass(result);
+                return result;
+            }
         } catch (ClassNotFoundException ignored) {
         }
 
@@ -153,9 +417,37 @@ public final class JavaExtensionClassLoader extends URLClassLoader {
             if (result != null && result.getClassLoader() instanceof JavaExtensionClassLoader) {
                 return result;
             }
+
+            negativeCache.markMissing(this, name, generation);
+        }
+
+        throw new MissingClassException(name);
+    }
+
+    private Class<?> findParentClass(String name) {
+        try {
+            // A null parent is the bootstrap loader
+            ClassLoader parent = this.getParent();
+            return (parent != null) ? parent.loadClass(name) : Class.forName(name, false, null);
+        } catch (ClassNotFoundException exception) {
+            return null;
+        }
+    }
+
+    private static byte[] readClassBytes(JarEntry entry, InputStream in) throws IOException {
+        // The uncompressed size is known from the zip directory, read straight into a buffer of that size
+        long size = entry.getSize();
+        if (size < 0 || size > Integer.MAX_VALUE - 8) {
+            return in.readAllBytes();
+        }
+
+        byte[] classBytes = new byte[(int) size];
+        int read = in.readNBytes(classBytes, 0, classBytes.length);
+        if (read != classBytes.length || in.read() != -1) {
+            throw new IOException("Size of entry '%s' doesn't match its header".formatted(entry.getName()));
         }
 
-        throw new ClassNotFoundException(name);
+        return classBytes;
     }
 
     private JavaExtension getExtension(Class<? extends JavaExtension> extensionClass) throws Exception {
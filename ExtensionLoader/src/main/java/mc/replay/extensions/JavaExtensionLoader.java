@@ -1,22 +1,68 @@
 package mc.replay.extensions;
 
-import mc.replay.extensions.exception.InvalidConfigurationException;
+import mc.replay.extensions.exception.ExtensionNotLoadedException;
 import mc.replay.extensions.exception.InvalidExtensionException;
+import mc.replay.extensions.metrics.ExtensionMetricsListener;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.security.cert.Certificate;
+import java.time.Duration;
 import java.util.*;
-
-public class JavaExtensionLoader implements ExtensionLoaderMethods {
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class JavaExtensionLoader implements ExtensionLoaderMethods, Closeable {
 
     final ClassFinder classFinder;
-    final Map<String, JavaExtensionClassLoader> loaders = new HashMap<>();
+    final ExtensionLibraries libraries;
+    final NegativeLookupCache negativeCache = new NegativeLookupCache(4096);
+    final ServiceRegistry services = new ServiceRegistry();
+    final List<ExtensionClassTransformer> transformers = new CopyOnWriteArrayList<>();
+    final Map<String, JavaExtensionClassLoader> loaders = new ConcurrentHashMap<>();
+    final Map<String, ExtensionDescriptor> lazyExtensions = new ConcurrentHashMap<>();
+
+    final Object lifecycleLock = new Object();
 
     private final File folder;
 
+    // Rebuilt on every load and unload, in load order, so reads never copy or sort
+    private final Object registryLock = new Object();
+    private volatile List<JavaExtensionClassLoader> loaderSnapshot = List.of();
+    private volatile List<JavaExtension> extensionSnapshot = List.of();
+    private volatile Map<String, JavaExtensionClassLoader> loaderByNameSnapshot = Map.of();
+
+    private final List<RetiredExtension> retiredExtensions = new ArrayList<>();
+    private ExtensionWatcher watcher;
+
+    private volatile ExtensionDescriptorCache descriptorCache;
+    private volatile boolean descriptorCacheHashing;
+    private volatile ExtensionMetricsListener metricsListener = ExtensionMetricsListener.NOOP;
+    private volatile ExtensionClassDataSharing classDataSharing;
+
+    private volatile ExtensionVerificationPolicy verificationPolicy = ExtensionVerificationPolicy.NONE;
+    private volatile Set<String> trustedDigests = Set.of();
+    private volatile Set<Certificate> trustedCertificates = Set.of();
+    private ExecutorService preloadExecutor;
+
+    // Lifecycle runs are queued, so an extension is never enabled and disabled at the same time
+    private final ExtensionLifecycle lifecycle = new ExtensionLifecycle();
+    private final Object lifecycleQueueLock = new Object();
+    private CompletableFuture<Void> lifecycleQueue = CompletableFuture.completedFuture(null);
+    private volatile boolean lifecycleActive;
+
     public JavaExtensionLoader(@NotNull File folder) {
         if (folder == null) {
             throw new IllegalArgumentException("Extension folder is null.");
@@ -28,19 +74,116 @@ public class JavaExtensionLoader implements ExtensionLoaderMethods {
 
         this.folder = folder;
         this.classFinder = new ClassFinder(this);
+        this.libraries = new ExtensionLibraries(folder, this.getClass().getClassLoader());
+        this.descriptorCache = new ExtensionDescriptorCache(folder);
+    }
+
+    public final void setDescriptorCacheEnabled(boolean enabled) {
+        if (enabled == (this.descriptorCache != null)) return;
+
+        this.descriptorCache = enabled ? new ExtensionDescriptorCache(this.folder) : null;
+    }
+
+    public final void setDescriptorCacheHashing(boolean hashing) {
+        this.descriptorCacheHashing = hashing;
+    }
+
+    public final void setMetricsListener(@Nullable ExtensionMetricsListener metricsListener) {
+        this.metricsListener = (metricsListener != null) ? metricsListener : ExtensionMetricsListener.NOOP;
+    }
+
+    public final @NotNull ExtensionMetricsListener getMetricsListener() {
+        return this.metricsListener;
+    }
+
+    public final void setClassDataSharingEnabled(boolean enabled) {
+        if (enabled == (this.classDataSharing != null)) return;
+
+        this.classDataSharing = enabled ? new ExtensionClassDataSharing(this.folder) : null;
+    }
+
+    public final @Nullable File getClassDataSharingArguments() {
+        ExtensionClassDataSharing classDataSharing = this.classDataSharing;
+        return (classDataSharing != null) ? classDataSharing.getArgumentsFile() : null;
+    }
+
+    public final boolean isClassDataSharingActive() {
+        ExtensionClassDataSharing classDataSharing = this.classDataSharing;
+        return classDataSharing != null && classDataSharing.isArchiveMapped(classDataSharing.getArchiveFile(this.getDescriptors()));
+    }
+
+    public final void setLifecycleTimeout(@NotNull Duration timeout) {
+        this.lifecycle.setTimeout(timeout);
+    }
+
+    public final void setVerificationPolicy(@NotNull ExtensionVerificationPolicy verificationPolicy) {
+        this.verificationPolicy = verificationPolicy;
+    }
+
+    public final void setTrustedDigests(@NotNull Collection<String> trustedDigests) {
+        this.trustedDigests = trustedDigests.stream().map((digest) -> digest.toLowerCase(Locale.ROOT)).collect(Collectors.toUnmodifiableSet());
+    }
+
+    public final void setTrustedCertificates(@NotNull Collection<? extends Certificate> trustedCertificates) {
+        this.trustedCertificates = Set.copyOf(trustedCertificates);
+    }
+
+    @NotNull ExtensionVerificationPolicy getVerificationPolicy() {
+        return this.verificationPolicy;
+    }
+
+    @NotNull Set<String> getTrustedDigests() {
+        return this.trustedDigests;
+    }
+
+    @NotNull Set<Certificate> getTrustedCertificates() {
+        return this.trustedCertificates;
+    }
+
+    // Entries are per requesting extension, 0 disables the cache
+    public final void setNegativeCacheSize(int size) {
+        this.negativeCache.setMaxSize(size);
+    }
+
+    public final long getNegativeCacheHits() {
+        return this.negativeCache.getHits();
+    }
+
+    public final long getNegativeCacheMisses() {
+        return this.negativeCache.getMisses();
+    }
+
+    public final int getDescriptorCacheHits() {
+        return (this.descriptorCache != null) ? this.descriptorCache.getHits() : 0;
+    }
+
+    public final int getDescriptorCacheMisses() {
+        return (this.descriptorCache != null) ? this.descriptorCache.getMisses() : 0;
+    }
+
+    @NotNull File getFolder() {
+        return this.folder;
+    }
+
+    @Nullable ExtensionDescriptorCache getDescriptorCache() {
+        return this.descriptorCache;
+    }
+
+    boolean isDescriptorCacheHashing() {
+        return this.descriptorCacheHashing;
     }
 
     @Override
     public final @NotNull Collection<JavaExtension> getExtensions() {
-        return new TreeSet<>(this.loaders.values().stream().map(JavaExtensionClassLoader::getExtension).toList());
+        return this.extensionSnapshot;
     }
 
     public final @NotNull Map<String, JavaExtensionClassLoader> getLoadersByName() {
-        return new HashMap<>(this.loaders);
+        return this.loaderByNameSnapshot;
     }
 
     public @NotNull Collection<JavaExtensionClassLoader> getLoaders() {
-        return new HashSet<>(this.loaders.values());
+        return this.loaderSnapshot;
     }
 
     @SuppressWarnings("unchecked")
@@ -48,40 +191,72 @@ public class JavaExtensionLoader implements ExtensionLoaderMethods {
     @Nullable
     public final JavaExtension getExtensionByName(@NotNull String name) {
         JavaExtensionClassLoader loader = this.loaders.get(name);
+        if (loader == null) {
+            ExtensionDescriptor descriptor = this.lazyExtensions.get(name);
+            if (descriptor != null) loader = this.materializeExtension(descriptor);
+        }
+
         return loader != null ? loader.getExtension() : null;
     }
 
-    public void loadExtensions() throws IOException, InvalidExtensionException {
-        File[] listFiles = this.folder.listFiles();
-        if (listFiles == null) return;
+    @Override
+    public final <T> void registerService(@NotNull Class<T> type, @NotNull T provider, int priority, @Nullable JavaExtension owner) {
+        this.services.register(type, provider, priority, owner);
+    }
 
-        File[] files = Arrays.stream(listFiles)
-                .filter(x -> x.getName().endsWith(".jar"))
-                .toArray(File[]::new);
+    @Override
+    public final <T> boolean unregisterService(@NotNull Class<T> type, @NotNull T provider) {
+        return this.services.unregister(type, provider);
+    }
 
-        TreeMap<ExtensionConfig, File> configs = new TreeMap<>(Comparator.comparing((file) -> file, (config1, config2) -> {
-            for (String dependency : config1.getDepends()) {
-                if (dependency.equalsIgnoreCase(config1.getName())) return 0;
+    @Override
+    public final <T> @Nullable T getService(@NotNull Class<T> type) {
+        return this.services.get(type);
+    }
 
-                if (config2.getName().equalsIgnoreCase(dependency) || dependency.equalsIgnoreCase("all")) {
-                    return 1;
-                }
-            }
+    @Override
+    public final <T> @NotNull List<T> getServices(@NotNull Class<T> type) {
+        return this.services.getAll(type);
+    }
 
-            return -1;
-        }));
+    // Applied in registration order, to extensions loaded afterwards
+    public final void addClassTransformer(@NotNull ExtensionClassTransformer transformer) {
+        this.transformers.add(transformer);
+    }
 
-        for (File file : files) {
-            if (!file.exists() || !file.getParentFile().equals(this.folder)) {
-                throw new InvalidExtensionException("File '%s' doesn't exist or is not in folder of this loader.".formatted(file.getName()));
-            }
+    public final boolean removeClassTransformer(@NotNull ExtensionClassTransformer transformer) {
+        return this.transformers.remove(transformer);
+    }
 
-            ExtensionConfig config = this.loadConfig(file);
-            configs.put(config, file);
+    // Snapshot of every loaded extension's executor, in load order
+    public final @NotNull Map<String, ExtensionResourceUsage> getResourceUsage() {
+        Map<String, ExtensionResourceUsage> usage = new LinkedHashMap<>();
+        for (JavaExtensionClassLoader loader : this.loaderSnapshot) {
+            usage.put(loader.getDescriptor().getName(), loader.getResourceUsage());
         }
 
-        for (Map.Entry<ExtensionConfig, File> entry : configs.entrySet()) {
-            this.loadExtension0(entry.getValue(), entry.getKey());
+        return Collections.unmodifiableMap(usage);
+    }
+
+    public final @Nullable ExtensionResourceUsage getResourceUsage(@NotNull String extensionName) {
+        JavaExtensionClassLoader loader = this.loaders.get(extensionName);
+        return (loader != null) ? loader.getResourceUsage() : null;
+    }
+
+    public final @NotNull Collection<String> getLazyExtensionNames() {
+        return Collections.unmodifiableSet(this.lazyExtensions.keySet());
+    }
+
+    public void loadExtensions() throws IOException, InvalidExtensionException {
+        File[] files = this.getJarFiles();
+        if (files == null) return;
+
+        synchronized (this.lifecycleLock) {
+            try {
+                this.loadExtensions(files, true);
+            } finally {
+                this.updateClassDataSharing();
+            }
         }
     }
 
@@ -95,17 +270,126 @@ public class JavaExtensionLoader implements ExtensionLoaderMethods {
 
     @ApiStatus.Experimental
     public void loadExtension(@NotNull File file) throws IOException, InvalidExtensionException {
-        if (!file.exists() || !file.getParentFile().equals(this.folder)) {
-            throw new InvalidExtensionException("File '%s' doesn't exist or is not in folder of this loader.".formatted(file.getName()));
+        synchronized (this.lifecycleLock) {
+            this.loadExtension0(file);
+        }
+    }
+
+    public void reloadExtension(@NotNull String extensionName) throws IOException, InvalidExtensionException {
+        synchronized (this.lifecycleLock) {
+            File file = this.getExtensionFile(extensionName);
+            if (file == null) {
+                throw new IllegalArgumentException("Extension '%s' was not loaded.".formatted(extensionName));
+            }
+
+            this.reloadExtensions(List.of(file));
+        }
+    }
+
+    // Only touches jars that were added, changed or removed since they were loaded, and the dependents of changed ones
+    public @NotNull ExtensionRescanReport rescan() throws IOException, InvalidExtensionException {
+        File[] files = this.getJarFiles();
+        if (files == null) files = new File[0];
+
+        synchronized (this.lifecycleLock) {
+            try {
+                return this.rescan0(files);
+            } finally {
+                this.updateClassDataSharing();
+            }
+        }
+    }
+
+    // Runs in finally blocks, a failure here must not hide why loading failed, and only costs the next start its archive
+    private void updateClassDataSharing() {
+        ExtensionClassDataSharing classDataSharing = this.classDataSharing;
+        if (classDataSharing == null) return;
+
+        try {
+            classDataSharing.update(this.getDescriptors());
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    // Extensions loaded afterwards are enabled as soon as they are loaded, until disableExtensions is called
+    public @NotNull CompletableFuture<Void> enableExtensions() {
+        this.lifecycleActive = true;
+        return this.queueLifecycle(() -> this.lifecycle.enable(this.loaderSnapshot, this.lazyExtensions.keySet()));
+    }
+
+    public @NotNull CompletableFuture<Void> disableExtensions() {
+        this.lifecycleActive = false;
+        return this.queueLifecycle(() -> this.lifecycle.disable(this.loaderSnapshot, this.lazyExtensions.keySet()));
+    }
+
+    public void startWatching() throws IOException {
+        synchronized (this.lifecycleLock) {
+            if (this.watcher != null) return;
+
+            this.watcher = new ExtensionWatcher(this, this.folder);
+            this.watcher.start();
+        }
+    }
+
+    public void stopWatching() throws IOException {
+        synchronized (this.lifecycleLock) {
+            if (this.watcher == null) return;
+
+            this.watcher.close();
+            this.watcher = null;
+        }
+    }
+
+    public final @NotNull Collection<RetiredExtension> getRetiredExtensions() {
+        synchronized (this.retiredExtensions) {
+            return List.copyOf(this.retiredExtensions);
         }
+    }
+
+    public final @NotNull Collection<RetiredExtension> getLeakedExtensions() {
+        synchronized (this.retiredExtensions) {
+            this.retiredExtensions.removeIf(RetiredExtension::isCollected);
+            return List.copyOf(this.retiredExtensions);
+        }
+    }
+
+    private void loadExtension0(File file) throws IOException, InvalidExtensionException {
+        ExtensionDescriptor descriptor = ExtensionDiscovery.discover(this, file);
+        if (this.descriptorCache != null) this.descriptorCache.save();
 
-        ExtensionConfig config = this.loadConfig(file);
-        this.loadExtension0(file, config);
+        ExtensionDependencyGraph graph = new ExtensionDependencyGraph(List.of(descriptor), this.getRegisteredNames());
+        InvalidExtensionException failure = graph.getFailures().get(file);
+        if (failure != null) throw failure;
+
+        if (descriptor.getConfig().isLazy()) {
+            this.registerLazyExtension(descriptor);
+            return;
+        }
+
+        this.loadExtension0(descriptor);
+    }
+
+    // Unloads everything and stops the loader's threads, the loader can't be used afterwards
+    @Override
+    public void close() throws IOException {
+        synchronized (this.lifecycleLock) {
+            try {
+                this.stopWatching();
+                this.unloadExtensions();
+            } finally {
+                this.lifecycle.shutdown();
+
+                synchronized (this) {
+                    if (this.preloadExecutor != null) this.preloadExecutor.shutdownNow();
+                }
+            }
+        }
     }
 
     public void unloadExtensions() throws IOException {
-        for (JavaExtension extension : this.getExtensions()) {
-            this.unloadExtension(extension);
+        synchronized (this.lifecycleLock) {
+            this.unloadExtensions(this.getRegisteredNames());
         }
     }
 
@@ -114,42 +398,543 @@ public class JavaExtensionLoader implements ExtensionLoaderMethods {
     }
 
     public void unloadExtension(@NotNull String extensionName) throws IOException {
-        JavaExtensionClassLoader loader = this.loaders.remove(extensionName);
+        synchronized (this.lifecycleLock) {
+            this.unloadExtension0(extensionName, System.nanoTime() + JavaExtensionClassLoader.EXECUTOR_SHUTDOWN_NANOS);
+        }
+    }
+
+    private ExtensionRescanReport rescan0(File[] files) throws IOException, InvalidExtensionException {
+        Map<String, ExtensionDescriptor> registered = new HashMap<>();
+        Map<File, ExtensionDescriptor> registeredByFile = new HashMap<>();
+        for (ExtensionDescriptor descriptor : this.getDescriptors()) {
+            registered.put(descriptor.getName(), descriptor);
+            registeredByFile.put(descriptor.getFile(), descriptor);
+        }
+
+        List<String> unchanged = new ArrayList<>();
+        List<File> candidates = new ArrayList<>();
+        for (File file : files) {
+            ExtensionDescriptor current = registeredByFile.get(file);
+
+            // Compare the same way the jar was fingerprinted when it was loaded
+            if (current != null && current.getFingerprint().equals(JarFingerprint.of(file, current.getFingerprint().getHash() != null))) {
+                unchanged.add(current.getName());
+            } else {
+                candidates.add(file);
+            }
+        }
+
+        Map<File, InvalidExtensionException> failures = new LinkedHashMap<>();
+        ExecutorService executor = ExtensionLoaderUtils.createExecutor("Extension-Loader", Math.min(candidates.size(), Runtime.getRuntime().availableProcessors()));
+
+        try {
+            List<ExtensionDescriptor> discovered = ExtensionDiscovery.discover(this, candidates.toArray(File[]::new), executor, failures);
+
+            if (this.descriptorCache != null) {
+                this.descriptorCache.retain(Arrays.asList(files));
+                this.descriptorCache.save();
+            }
+
+            List<ExtensionDescriptor> added = new ArrayList<>();
+            Map<String, ExtensionDescriptor> upgraded = new LinkedHashMap<>();
+            for (ExtensionDescriptor descriptor : discovered) {
+                ExtensionDescriptor current = registered.get(descriptor.getName());
+
+                if (current == null) {
+                    added.add(descriptor);
+                } else if (!current.getFile().equals(descriptor.getFile()) && current.getFile().exists()) {
+                    failures.put(descriptor.getFile(), new InvalidExtensionException("Extension '%s' is already loaded from '%s'".formatted(descriptor.getName(), current.getFile().getName())));
+                } else if (isSameJar(current, descriptor)) {
+                    // Only the modification time changed
+                    unchanged.add(current.getName());
+                } else {
+                    upgraded.put(descriptor.getName(), descriptor);
+                }
+            }
+
+            // Jars that disappeared, or that now contain an extension with another name
+            Set<File> replaced = discovered.stream().map(ExtensionDescriptor::getFile).collect(Collectors.toSet());
+            Set<File> present = new HashSet<>(Arrays.asList(files));
+            Map<String, ExtensionDescriptor> removed = new LinkedHashMap<>();
+            for (ExtensionDescriptor descriptor : registered.values()) {
+                if (upgraded.containsKey(descriptor.getName()) || unchanged.contains(descriptor.getName())) continue;
+                if (present.contains(descriptor.getFile()) && (!replaced.contains(descriptor.getFile()) || failures.containsKey(descriptor.getFile()))) continue;
+
+                removed.put(descriptor.getName(), descriptor);
+            }
+
+            Set<String> changed = new HashSet<>(upgraded.keySet());
+            changed.addAll(removed.keySet());
+
+            // Dependents are loaded again from their unchanged jars, and fail like any other extension if a dependency is gone
+            List<ExtensionDescriptor> dependents = new ArrayList<>();
+            for (String name : this.getDependents(changed)) {
+                if (!changed.contains(name)) dependents.add(registered.get(name));
+            }
+
+            dependents.forEach((descriptor) -> unchanged.remove(descriptor.getName()));
+            if (!changed.isEmpty()) this.unloadExtensions(changed);
+
+            List<ExtensionDescriptor> loading = new ArrayList<>(added);
+            loading.addAll(upgraded.values());
+            loading.addAll(dependents);
+
+            ExtensionDependencyGraph graph = new ExtensionDependencyGraph(loading, this.getRegisteredNames());
+            failures.putAll(graph.getFailures());
+
+            this.enableIfActive(this.loadExtensions0(graph, executor, failures));
+
+            return new ExtensionRescanReport(
+                    added.stream().filter((descriptor) -> !failures.containsKey(descriptor.getFile()))
+                            .map((descriptor) -> new ExtensionRescanReport.Change(descriptor.getName(), null, descriptor.getConfig().getVersion(), descriptor.getFile()))
+                            .toList(),
+                    upgraded.values().stream().filter((descriptor) -> !failures.containsKey(descriptor.getFile()))
+                            .map((descriptor) -> new ExtensionRescanReport.Change(descriptor.getName(), registered.get(descriptor.getName()).getConfig().getVersion(), descriptor.getConfig().getVersion(), descriptor.getFile()))
+                            .toList(),
+                    removed.values().stream()
+                            .map((descriptor) -> new ExtensionRescanReport.Change(descriptor.getName(), descriptor.getConfig().getVersion(), null, descriptor.getFile()))
+                            .toList(),
+                    dependents.stream().filter((descriptor) -> !failures.containsKey(descriptor.getFile()))
+                            .map((descriptor) -> new ExtensionRescanReport.Change(descriptor.getName(), descriptor.getConfig().getVersion(), descriptor.getConfig().getVersion(), descriptor.getFile()))
+                            .toList(),
+                    // The previous version can't be brought back, its jar was usually overwritten by the one that failed
+                    Stream.concat(upgraded.values().stream(), dependents.stream()).filter((descriptor) -> failures.containsKey(descriptor.getFile()))
+                            .map((descriptor) -> new ExtensionRescanReport.Change(descriptor.getName(), registered.get(descriptor.getName()).getConfig().getVersion(), null, descriptor.getFile()))
+                            .toList(),
+                    unchanged,
+                    failures
+            );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static boolean isSameJar(ExtensionDescriptor current, ExtensionDescriptor descriptor) {
+        JarFingerprint currentFingerprint = current.getFingerprint();
+        JarFingerprint fingerprint = descriptor.getFingerprint();
+
+        return current.getFile().equals(descriptor.getFile())
+                && current.getConfig().getVersion().equals(descriptor.getConfig().getVersion())
+                && currentFingerprint.getHash() != null && currentFingerprint.getHash().equals(fingerprint.getHash());
+    }
+
+    void reloadExtensions(Collection<File> files) throws IOException, InvalidExtensionException {
+        Set<String> names = new HashSet<>();
+        for (File file : files) {
+            String name = this.getExtensionName(file);
+            if (name != null) names.add(name);
+        }
+
+        Set<String> reloading = this.getDependents(names);
+
+        List<File> reloadFiles = new ArrayList<>(files);
+        for (String name : reloading) {
+            File file = this.getExtensionFile(name);
+            if (file != null && !reloadFiles.contains(file)) reloadFiles.add(file);
+        }
+
+        this.unloadExtensions(reloading);
+        this.loadExtensions(reloadFiles.stream().filter(File::exists).toArray(File[]::new), false);
+    }
+
+    void unloadExtensions(Collection<String> names) throws IOException {
+        Set<String> remaining = new HashSet<>(this.getDependents(names));
+        IOException failure = null;
+
+        // Not only the enabled ones, an enable that is still queued has to be undone as well
+        List<JavaExtensionClassLoader> disabling = new ArrayList<>();
+        for (String name : remaining) {
+            JavaExtensionClassLoader loader = this.loaders.get(name);
+            if (loader != null) disabling.add(loader);
+        }
+
+        if (!disabling.isEmpty()) this.disable(disabling);
+
+        // Every executor drains at the same time instead of one after the other
+        for (JavaExtensionClassLoader loader : disabling) {
+            loader.shutdownExecutor();
+        }
+
+        long deadline = System.nanoTime() + JavaExtensionClassLoader.EXECUTOR_SHUTDOWN_NANOS;
+
+        // Dependents go first, so nothing is left pointing into an already closed loader
+        while (!remaining.isEmpty()) {
+            String next = null;
+            for (String name : remaining) {
+                if (this.getDependents(Set.of(name)).stream().noneMatch((dependent) -> !dependent.equals(name) && remaining.contains(dependent))) {
+                    next = name;
+                    break;
+                }
+            }
+
+            if (next == null) next = remaining.iterator().next();
+            remaining.remove(next);
+
+            try {
+                this.unloadExtension0(next, deadline);
+            } catch (IOException exception) {
+                if (failure == null) failure = exception;
+                else failure.addSuppressed(exception);
+            }
+        }
+
+        if (failure != null) throw failure;
+    }
+
+    private List<ExtensionDescriptor> getDescriptors() {
+        List<ExtensionDescriptor> descriptors = new ArrayList<>(this.lazyExtensions.values());
+        for (JavaExtensionClassLoader loader : this.loaders.values()) {
+            descriptors.add(loader.getDescriptor());
+        }
+
+        return descriptors;
+    }
+
+    @Nullable File getExtensionFile(@NotNull String extensionName) {
+        JavaExtensionClassLoader loader = this.loaders.get(extensionName);
+        if (loader != null) return loader.getDescriptor().getFile();
+
+        ExtensionDescriptor descriptor = this.lazyExtensions.get(extensionName);
+        return (descriptor != null) ? descriptor.getFile() : null;
+    }
+
+    @Nullable String getExtensionName(@NotNull File file) {
+        for (JavaExtensionClassLoader loader : this.loaders.values()) {
+            if (loader.getDescriptor().getFile().equals(file)) return loader.getDescriptor().getName();
+        }
+
+        for (ExtensionDescriptor descriptor : this.lazyExtensions.values()) {
+            if (descriptor.getFile().equals(file)) return descriptor.getName();
+        }
+
+        return null;
+    }
+
+    private Set<String> getDependents(Collection<String> names) {
+        Set<String> dependents = new LinkedHashSet<>(names);
+        Map<String, ExtensionConfig> configs = new HashMap<>();
+        this.loaders.forEach((name, loader) -> configs.put(name, loader.getDescriptor().getConfig()));
+        this.lazyExtensions.forEach((name, descriptor) -> configs.put(name, descriptor.getConfig()));
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            for (Map.Entry<String, ExtensionConfig> entry : configs.entrySet()) {
+                if (dependents.contains(entry.getKey())) continue;
+
+                for (String dependency : entry.getValue().getDepends()) {
+                    if (dependency.equalsIgnoreCase("all") || dependents.stream().anyMatch(dependency::equalsIgnoreCase)) {
+                        dependents.add(entry.getKey());
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        return dependents;
+    }
+
+    private void unloadExtension0(String extensionName, long deadline) throws IOException {
+        ExtensionDescriptor lazyDescriptor = this.lazyExtensions.get(extensionName);
+        if (lazyDescriptor != null) {
+            synchronized (lazyDescriptor) {
+                if (this.lazyExtensions.remove(extensionName, lazyDescriptor)) {
+                    this.classFinder.removeLazyExtension(lazyDescriptor);
+                    return;
+                }
+            }
+        }
+
+        JavaExtensionClassLoader disabling = this.loaders.get(extensionName);
+        if (disabling != null) this.disable(List.of(disabling));
+
+        JavaExtensionClassLoader loader = this.unregisterLoader(extensionName);
         if (loader == null) {
             throw new IllegalArgumentException("Extension '%s' was not loaded.".formatted(extensionName));
         }
 
-        loader.close();
+        this.services.unregisterAll(loader);
+        loader.close(deadline);
+
+        synchronized (this.retiredExtensions) {
+            this.retiredExtensions.removeIf(RetiredExtension::isCollected);
+            this.retiredExtensions.add(new RetiredExtension(extensionName, loader.getDescriptor().getConfig().getVersion(), loader));
+        }
     }
 
-    private void loadExtension0(File file, ExtensionConfig config) throws IOException, InvalidExtensionException {
-        JavaExtensionClassLoader loader = this.loadExtensionFromFile(file, config);
+    private void loadExtensions(File[] files, boolean retainCache) throws IOException, InvalidExtensionException {
+        Map<File, InvalidExtensionException> failures = new LinkedHashMap<>();
+        ExecutorService executor = ExtensionLoaderUtils.createExecutor("Extension-Loader", Math.min(files.length, Runtime.getRuntime().availableProcessors()));
+
+        try {
+            List<ExtensionDescriptor> descriptors = ExtensionDiscovery.discover(this, files, executor, failures);
+
+            if (this.descriptorCache != null) {
+                if (retainCache) this.descriptorCache.retain(Arrays.asList(files));
+                this.descriptorCache.save();
+            }
+
+            ExtensionDependencyGraph graph = new ExtensionDependencyGraph(descriptors, this.getRegisteredNames());
+            failures.putAll(graph.getFailures());
+
+            this.enableIfActive(this.loadExtensions0(graph, executor, failures));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (!failures.isEmpty()) {
+            InvalidExtensionException exception = new InvalidExtensionException("Could not load %d extension file(s): %s".formatted(
+                    failures.size(),
+                    failures.keySet().stream().map(File::getName).collect(Collectors.joining(", "))
+            ));
+            failures.values().forEach(exception::addSuppressed);
+            throw exception;
+        }
+    }
+
+    // Every wave only depends on earlier waves, so the extensions of one wave are constructed concurrently
+    private List<JavaExtensionClassLoader> loadExtensions0(ExtensionDependencyGraph graph, ExecutorService executor, Map<File, InvalidExtensionException> failures) throws InvalidExtensionException {
+        List<JavaExtensionClassLoader> loaded = new ArrayList<>();
+        Set<String> failed = new HashSet<>();
+
+        for (List<ExtensionDescriptor> wave : graph.getWaves()) {
+            List<ExtensionDescriptor> loading = new ArrayList<>(wave.size());
+            List<Future<JavaExtensionClassLoader>> futures = new ArrayList<>(wave.size());
+
+            for (ExtensionDescriptor descriptor : wave) {
+                String failedDependency = graph.getDependencies(descriptor).stream().filter(failed::contains).findFirst().orElse(null);
+                if (failedDependency != null) {
+                    failures.put(descriptor.getFile(), new InvalidExtensionException("Extension '%s' depends on extension '%s' which could not be loaded".formatted(descriptor.getName(), graph.getDependencyName(descriptor, failedDependency))));
+                    failed.add(ExtensionDependencyGraph.key(descriptor.getName()));
+                    continue;
+                }
+
+                if (descriptor.getConfig().isLazy()) {
+                    this.registerLazyExtension(descriptor);
+                    continue;
+                }
+
+                loading.add(descriptor);
+                futures.add(executor.submit(() -> this.loadExtensionFromFile(descriptor)));
+            }
+
+            for (int i = 0; i < loading.size(); i++) {
+                ExtensionDescriptor descriptor = loading.get(i);
+
+                try {
+                    JavaExtensionClassLoader loader = futures.get(i).get();
+                    if (loader == null) {
+                        throw new InvalidExtensionException("Couldn't create class loader for extension file '%s'".formatted(descriptor.getFile().getName()));
+                    }
+
+                    this.registerLoader(loader);
+                    loaded.add(loader);
+                    continue;
+                } catch (ExecutionException exception) {
+                    Throwable cause = exception.getCause();
+                    failures.put(descriptor.getFile(), (cause instanceof InvalidExtensionException invalidExtensionException)
+                            ? invalidExtensionException
+                            : new InvalidExtensionException("Could not load extension file '%s'".formatted(descriptor.getFile().getName()), cause));
+                } catch (InvalidExtensionException exception) {
+                    failures.put(descriptor.getFile(), exception);
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    throw new InvalidExtensionException("Interrupted while loading extensions", exception);
+                }
+
+                failed.add(ExtensionDependencyGraph.key(descriptor.getName()));
+            }
+        }
+
+        return loaded;
+    }
+
+    private void registerLazyExtension(ExtensionDescriptor descriptor) {
+        this.lazyExtensions.put(descriptor.getName(), descriptor);
+        this.classFinder.addLazyExtension(descriptor);
+    }
+
+    // Dependencies are matched ignoring case, the same way the dependency graph resolves them
+    private @Nullable ExtensionDescriptor getLazyDescriptor(String name) {
+        ExtensionDescriptor descriptor = this.lazyExtensions.get(name);
+        if (descriptor != null) return descriptor;
+
+        for (ExtensionDescriptor lazyDescriptor : this.lazyExtensions.values()) {
+            if (lazyDescriptor.getName().equalsIgnoreCase(name)) return lazyDescriptor;
+        }
+
+        return null;
+    }
+
+    JavaExtensionClassLoader materializeExtension(ExtensionDescriptor descriptor) {
+        JavaExtensionClassLoader loader = this.loaders.get(descriptor.getName());
+        if (loader != null) return loader;
+
+        // Lazy dependencies have to exist before the extension's own classes are initialized
+        for (String dependency : descriptor.getConfig().getDepends()) {
+            ExtensionDescriptor dependencyDescriptor = this.getLazyDescriptor(dependency);
+            if (dependencyDescriptor != null && dependencyDescriptor != descriptor) {
+                this.materializeExtension(dependencyDescriptor);
+            }
+        }
+
+        synchronized (descriptor) {
+            loader = this.loaders.get(descriptor.getName());
+            if (loader != null) return loader;
+
+            // Unloaded before anything touched it
+            if (this.lazyExtensions.get(descriptor.getName()) != descriptor) return null;
+
+            try {
+                this.loadExtension0(descriptor);
+            } catch (IOException | InvalidExtensionException exception) {
+                throw new ExtensionNotLoadedException("Could not load lazy extension '%s'".formatted(descriptor.getName()), exception);
+            }
+
+            this.lazyExtensions.remove(descriptor.getName());
+            this.classFinder.removeLazyExtension(descriptor);
+
+            return this.loaders.get(descriptor.getName());
+        }
+    }
+
+    private void registerLoader(JavaExtensionClassLoader loader) {
+        synchronized (this.registryLock) {
+            this.loaders.put(loader.getExtension().getName(), loader);
+
+            List<JavaExtensionClassLoader> loaders = new ArrayList<>(this.loaderSnapshot);
+            loaders.add(loader);
+            this.publishSnapshot(loaders);
+        }
+
+        this.services.invalidate();
+
+        if (!loader.getDescriptor().getConfig().getPreload().isEmpty()) {
+            loader.preload(this.getPreloadExecutor());
+        }
+    }
+
+    private synchronized ExecutorService getPreloadExecutor() {
+        if (this.preloadExecutor == null) {
+            // Leave room for the threads that are actually serving requests
+            this.preloadExecutor = ExtensionLoaderUtils.createExecutor("Extension-Preload", Runtime.getRuntime().availableProcessors() / 2);
+        }
+
+        return this.preloadExecutor;
+    }
+
+    private JavaExtensionClassLoader unregisterLoader(String extensionName) {
+        synchronized (this.registryLock) {
+            JavaExtensionClassLoader loader = this.loaders.remove(extensionName);
+            if (loader == null) return null;
+
+            List<JavaExtensionClassLoader> loaders = new ArrayList<>(this.loaderSnapshot);
+            loaders.remove(loader);
+            this.publishSnapshot(loaders);
+
+            return loader;
+        }
+    }
+
+    private void publishSnapshot(List<JavaExtensionClassLoader> loaders) {
+        List<JavaExtension> extensions = new ArrayList<>(loaders.size());
+        Map<String, JavaExtensionClassLoader> loaderByName = new LinkedHashMap<>();
+
+        for (JavaExtensionClassLoader loader : loaders) {
+            extensions.add(loader.getExtension());
+            loaderByName.put(loader.getExtension().getName(), loader);
+        }
+
+        this.loaderSnapshot = Collections.unmodifiableList(loaders);
+        this.extensionSnapshot = Collections.unmodifiableList(extensions);
+        this.loaderByNameSnapshot = Collections.unmodifiableMap(loaderByName);
+    }
+
+    private @Nullable File[] getJarFiles() {
+        File[] listFiles = this.folder.listFiles();
+        if (listFiles == null) return null;
+
+        return Arrays.stream(listFiles)
+                .filter(x -> x.getName().endsWith(".jar"))
+                .toArray(File[]::new);
+    }
+
+    private Set<String> getRegisteredNames() {
+        Set<String> names = new HashSet<>(this.loaders.keySet());
+        names.addAll(this.lazyExtensions.keySet());
+        return names;
+    }
+
+    private void loadExtension0(ExtensionDescriptor descriptor) throws IOException, InvalidExtensionException {
+        JavaExtensionClassLoader loader = this.loadExtensionFromFile(descriptor);
         if (loader == null) {
-            throw new InvalidExtensionException("Couldn't create class loader for extension file '%s'".formatted(file.getName()));
+            throw new InvalidExtensionException("Couldn't create class loader for extension file '%s'".formatted(descriptor.getFile().getName()));
         }
 
         JavaExtension extension = loader.getExtension();
 
         if (extension != null) {
-            this.loaders.put(extension.getName(), loader);
+            this.registerLoader(loader);
+            this.enableIfActive(List.of(loader));
         }
     }
 
-    private JavaExtensionClassLoader loadExtensionFromFile(File file, ExtensionConfig config) throws IOException, InvalidExtensionException {
-        ClassLoader classLoader = this.getClass().getClassLoader();
+    private void enableIfActive(List<JavaExtensionClassLoader> loaders) {
+        if (!this.lifecycleActive || loaders.isEmpty()) return;
 
-        JavaExtensionClassLoader extensionClassLoader = new JavaExtensionClassLoader(this, this.folder, file, config, classLoader);
-        JavaExtension extension = extensionClassLoader.getExtension();
-        if (extension == null) return null;
+        Set<String> others = this.getRegisteredNames();
+        for (JavaExtensionClassLoader loader : loaders) {
+            others.remove(loader.getDescriptor().getName());
+        }
 
-        return extensionClassLoader;
+        // Nobody waits for this, the caller may well be in the middle of loading a class
+        this.queueLifecycle(() -> this.lifecycle.enable(loaders, others)).exceptionally((throwable) -> {
+            throwable.printStackTrace();
+            return null;
+        });
     }
 
-    private ExtensionConfig loadConfig(File file) throws InvalidExtensionException {
+    // Unloading has to wait, the extension's classes should not be used after its loader is closed.
+    // Queued behind enables that haven't finished yet, extensions that aren't enabled by then are skipped.
+    private void disable(List<JavaExtensionClassLoader> loaders) {
+        Supplier<CompletableFuture<Void>> action = () -> {
+            Set<String> others = this.getRegisteredNames();
+            for (JavaExtensionClassLoader loader : loaders) {
+                others.remove(loader.getDescriptor().getName());
+            }
+
+            return this.lifecycle.disable(loaders, others);
+        };
+
         try {
-            return ExtensionLoaderUtils.getConfig(file);
-        } catch (InvalidConfigurationException exception) {
-            throw new InvalidExtensionException(exception);
+            // A callback unloading or reloading from inside onEnable is itself the task at the head of the queue,
+            // waiting behind it would never return, so its disable runs right away
+            (ExtensionLifecycle.isInCallback() ? action.get() : this.queueLifecycle(action)).join();
+        } catch (CompletionException exception) {
+            exception.getCause().printStackTrace();
+        }
+    }
+
+    private CompletableFuture<Void> queueLifecycle(Supplier<CompletableFuture<Void>> action) {
+        synchronized (this.lifecycleQueueLock) {
+            CompletableFuture<Void> future = this.lifecycleQueue
+                    .handle((ignored, throwable) -> null)
+                    .thenCompose((ignored) -> action.get());
+
+            this.lifecycleQueue = future;
+            return future;
         }
     }
+
+    private JavaExtensionClassLoader loadExtensionFromFile(ExtensionDescriptor descriptor) throws IOException, InvalidExtensionException {
+        ClassLoader classLoader = this.getClass().getClassLoader();
+
+        JavaExtensionClassLoader extensionClassLoader = new JavaExtensionClassLoader(this, this.folder, descriptor, classLoader);
+        JavaExtension extension = extensionClassLoader.getExtension();
+        if (extension == null) return null;
+
+        return extensionClassLoader;
+    }
 }
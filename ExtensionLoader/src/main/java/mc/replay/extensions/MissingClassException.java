@@ -0,0 +1,20 @@
+package mc.replay.extensions;
+
+import java.io.Serial;
+
+// Thrown on every miss of the internal lookup path and caught right away, so don't pay for a stack trace.
+// loadClass and findClass never let it escape, callers get a ClassNotFoundException with a trace.
+final class MissingClassException extends ClassNotFoundException {
+
+    @Serial
+    private static final long serialVersionUID = -5167036283401625214L;
+
+    MissingClassException(String name) {
+        super(name);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,109 @@
+package mc.replay.extensions;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Class names known to be missing, per requesting loader since every loader sees a different set of classes.
+// Any load or unload can make a missing class resolvable, so every change clears the whole cache.
+final class NegativeLookupCache {
+
+    private final Map<Key, Boolean> missing = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private volatile int maxSize;
+
+    NegativeLookupCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        if (this.missing.size() > maxSize) this.missing.clear();
+    }
+
+    long getGeneration() {
+        return this.generation.get();
+    }
+
+    // Counted, this is what a class lookup from extension code consults first
+    boolean isMissing(@NotNull JavaExtensionClassLoader requester, @NotNull String name) {
+        if (this.contains(requester, name)) {
+            this.hits.increment();
+            return true;
+        }
+
+        this.misses.increment();
+        return false;
+    }
+
+    // A null requester stands for lookups that don't depend on who asks
+    boolean contains(@Nullable JavaExtensionClassLoader requester, @NotNull String name) {
+        return this.missing.containsKey(new Key(requester, name));
+    }
+
+    void markMissing(@Nullable JavaExtensionClassLoader requester, @NotNull String name, long generation) {
+        int maxSize = this.maxSize;
+        if (maxSize <= 0) return;
+
+        // Cheaper than tracking recency, and a full cache usually means something is probing generated names
+        if (this.missing.size() >= maxSize) {
+            this.missing.clear();
+        }
+
+        Key key = new Key(requester, name);
+        this.missing.put(key, Boolean.TRUE);
+
+        // A loader was added or removed while the caller was searching, the result may be stale
+        if (generation != this.generation.get()) {
+            this.missing.remove(key);
+        }
+    }
+
+    void invalidate() {
+        this.generation.incrementAndGet();
+        this.missing.clear();
+    }
+
+    long getHits() {
+        return this.hits.sum();
+    }
+
+    long getMisses() {
+        return this.misses.sum();
+    }
+
+    int size() {
+        return this.missing.size();
+    }
+
+    private static final class Key {
+
+        private final JavaExtensionClassLoader requester;
+        private final String name;
+
+        private Key(JavaExtensionClassLoader requester, String name) {
+            this.requester = requester;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key key)) return false;
+
+            return this.requester == key.requester && this.name.equals(key.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(this.requester) + this.name.hashCode();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package mc.replay.extensions;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.time.Instant;
+
+public final class RetiredExtension {
+
+    private final String name;
+    private final String version;
+    private final Instant retiredAt;
+    private final WeakReference<JavaExtensionClassLoader> loader;
+
+    RetiredExtension(@NotNull String name, @NotNull String version, @NotNull JavaExtensionClassLoader loader) {
+        this.name = name;
+        this.version = version;
+        this.retiredAt = Instant.now();
+        this.loader = new WeakReference<>(loader);
+    }
+
+    public @NotNull String getName() {
+        return this.name;
+    }
+
+    public @NotNull String getVersion() {
+        return this.version;
+    }
+
+    public @NotNull Instant getRetiredAt() {
+        return this.retiredAt;
+    }
+
+    public boolean isCollected() {
+        return this.loader.get() == null;
+    }
+
+    // Only a hint to the garbage collector, a loader that is still reachable afterwards is most likely leaked
+    public boolean awaitCollection(@NotNull Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+
+        while (!this.isCollected()) {
+            if (System.nanoTime() >= deadline) return false;
+
+            System.gc();
+            Thread.sleep(50);
+        }
+
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "RetiredExtension{" +
+                "name=" + this.name +
+                ", version=" + this.version +
+                ", retiredAt=" + this.retiredAt +
+                ", collected=" + this.isCollected() +
+                '}';
+    }
+}
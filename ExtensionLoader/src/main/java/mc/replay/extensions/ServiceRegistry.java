@@ -0,0 +1,105 @@
+package mc.replay.extensions;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+// Lookups are answered from an immutable snapshot of resolved types, only registering, unregistering,
+// loading and unloading throw it away
+final class ServiceRegistry {
+
+    private final Map<Class<?>, List<Registration>> registrations = new HashMap<>();
+    private long sequence;
+
+    private volatile Map<Class<?>, List<?>> resolved = Map.of();
+
+    synchronized <T> void register(@NotNull Class<T> type, @NotNull T provider, int priority, @Nullable JavaExtension owner) {
+        if (!type.isInstance(provider)) {
+            throw new IllegalArgumentException("%s is not an instance of %s".formatted(provider.getClass().getName(), type.getName()));
+        }
+
+        List<Registration> list = this.registrations.computeIfAbsent(type, (key) -> new ArrayList<>());
+        list.removeIf((registration) -> registration.provider == provider);
+        list.add(new Registration(type, provider, priority, owner, this.sequence++));
+
+        // Highest priority first, earlier registrations win ties
+        list.sort(Comparator.comparingInt((Registration registration) -> -registration.priority).thenComparingLong((registration) -> registration.sequence));
+
+        this.invalidate();
+    }
+
+    synchronized boolean unregister(@NotNull Class<?> type, @NotNull Object provider) {
+        List<Registration> list = this.registrations.get(type);
+        if (list == null || !list.removeIf((registration) -> registration.provider == provider)) return false;
+
+        if (list.isEmpty()) this.registrations.remove(type);
+        this.invalidate();
+        return true;
+    }
+
+    // Anything that still points into the loader would keep it from being collected
+    synchronized void unregisterAll(@NotNull JavaExtensionClassLoader loader) {
+        JavaExtension extension = loader.getExtension();
+
+        Iterator<List<Registration>> iterator = this.registrations.values().iterator();
+        while (iterator.hasNext()) {
+            List<Registration> list = iterator.next();
+            list.removeIf((registration) -> (extension != null && registration.owner == extension)
+                    || registration.type.getClassLoader() == loader
+                    || registration.provider.getClass().getClassLoader() == loader);
+
+            if (list.isEmpty()) iterator.remove();
+        }
+
+        this.invalidate();
+    }
+
+    synchronized void invalidate() {
+        this.resolved = Map.of();
+    }
+
+    <T> @Nullable T get(@NotNull Class<T> type) {
+        List<T> providers = this.getAll(type);
+        return providers.isEmpty() ? null : providers.get(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> @NotNull List<T> getAll(@NotNull Class<T> type) {
+        List<?> providers = this.resolved.get(type);
+        if (providers != null) return (List<T>) providers;
+
+        return (List<T>) this.resolve(type);
+    }
+
+    private synchronized List<?> resolve(Class<?> type) {
+        List<?> providers = this.resolved.get(type);
+        if (providers != null) return providers;
+
+        List<Registration> list = this.registrations.getOrDefault(type, List.of());
+        providers = list.stream().map((registration) -> registration.provider).toList();
+
+        Map<Class<?>, List<?>> resolved = new HashMap<>(this.resolved);
+        resolved.put(type, providers);
+        this.resolved = Map.copyOf(resolved);
+
+        return providers;
+    }
+
+    private static final class Registration {
+
+        private final Class<?> type;
+        private final Object provider;
+        private final int priority;
+        private final JavaExtension owner;
+        private final long sequence;
+
+        private Registration(Class<?> type, Object provider, int priority, JavaExtension owner, long sequence) {
+            this.type = type;
+            this.provider = provider;
+            this.priority = priority;
+            this.owner = owner;
+            this.sequence = sequence;
+        }
+    }
+}
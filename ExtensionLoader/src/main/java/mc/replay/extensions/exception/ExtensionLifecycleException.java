@@ -0,0 +1,17 @@
+package mc.replay.extensions.exception;
+
+import java.io.Serial;
+
+public final class ExtensionLifecycleException extends Exception {
+
+    @Serial
+    private static final long serialVersionUID = -2870419526735018164L;
+
+    public ExtensionLifecycleException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public ExtensionLifecycleException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,41 @@
+package mc.replay.extensions.metrics;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+
+// Called from loading threads and from whatever thread triggers class loading, implementations have to be thread safe
+public interface ExtensionMetricsListener {
+
+    ExtensionMetricsListener NOOP = new ExtensionMetricsListener() {
+    };
+
+    default void descriptorParsed(@NotNull File file, long nanos, boolean cached) {
+    }
+
+    default void classLoaderCreated(@NotNull String extension, long nanos) {
+    }
+
+    default void mainClassInitialized(@NotNull String extension, long nanos) {
+    }
+
+    default void extensionConstructed(@NotNull String extension, long nanos) {
+    }
+
+    default void classDefined(@NotNull String extension, @NotNull String className, int bytes) {
+    }
+
+    default void findClass(@NotNull String extension, @NotNull String className, boolean hit) {
+    }
+
+    default void crossExtensionLookup(@Nullable String requester, @NotNull String className, boolean found) {
+    }
+
+    default void classesPreloaded(@NotNull String extension, int classes, int failed, long nanos) {
+    }
+
+    // The extension waiting for the lock, null for lookups from outside any extension
+    default void classLoadLockWait(@Nullable String extension, @NotNull String className, long nanos) {
+    }
+}
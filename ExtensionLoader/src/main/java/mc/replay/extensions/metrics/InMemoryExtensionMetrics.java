@@ -0,0 +1,213 @@
+package mc.replay.extensions.metrics;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class InMemoryExtensionMetrics implements ExtensionMetricsListener {
+
+    private final Map<String, Statistics> statistics = new ConcurrentHashMap<>();
+    private final Map<File, Long> descriptorParseNanos = new ConcurrentHashMap<>();
+    private final LongAdder descriptorCacheHits = new LongAdder();
+    private final LongAdder classLoadLockWaitNanos = new LongAdder();
+    private final LongAdder classLoadLockWaits = new LongAdder();
+
+    @Override
+    public void descriptorParsed(@NotNull File file, long nanos, boolean cached) {
+        this.descriptorParseNanos.put(file, nanos);
+        if (cached) this.descriptorCacheHits.increment();
+    }
+
+    @Override
+    public void classLoaderCreated(@NotNull String extension, long nanos) {
+        this.getOrCreateStatistics(extension).classLoaderCreationNanos = nanos;
+    }
+
+    @Override
+    public void mainClassInitialized(@NotNull String extension, long nanos) {
+        this.getOrCreateStatistics(extension).mainClassInitNanos = nanos;
+    }
+
+    @Override
+    public void extensionConstructed(@NotNull String extension, long nanos) {
+        this.getOrCreateStatistics(extension).constructorNanos = nanos;
+    }
+
+    @Override
+    public void classDefined(@NotNull String extension, @NotNull String className, int bytes) {
+        Statistics statistics = this.getOrCreateStatistics(extension);
+        statistics.classesDefined.increment();
+        statistics.bytesRead.add(bytes);
+    }
+
+    @Override
+    public void findClass(@NotNull String extension, @NotNull String className, boolean hit) {
+        Statistics statistics = this.getOrCreateStatistics(extension);
+        (hit ? statistics.findClassHits : statistics.findClassMisses).increment();
+    }
+
+    @Override
+    public void crossExtensionLookup(@Nullable String requester, @NotNull String className, boolean found) {
+        if (requester == null) return;
+
+        Statistics statistics = this.getOrCreateStatistics(requester);
+        (found ? statistics.crossExtensionHits : statistics.crossExtensionMisses).increment();
+    }
+
+    @Override
+    public void classesPreloaded(@NotNull String extension, int classes, int failed, long nanos) {
+        Statistics statistics = this.getOrCreateStatistics(extension);
+        statistics.preloadedClasses = classes;
+        statistics.preloadNanos = nanos;
+    }
+
+    @Override
+    public void classLoadLockWait(@Nullable String extension, @NotNull String className, long nanos) {
+        this.classLoadLockWaits.increment();
+        this.classLoadLockWaitNanos.add(nanos);
+        if (extension == null) return;
+
+        Statistics statistics = this.getOrCreateStatistics(extension);
+        statistics.lockWaits.increment();
+        statistics.lockWaitNanos.add(nanos);
+    }
+
+    public @Nullable Statistics getStatistics(@NotNull String extension) {
+        return this.statistics.get(extension);
+    }
+
+    public @NotNull Map<String, Statistics> getStatistics() {
+        return Collections.unmodifiableMap(this.statistics);
+    }
+
+    public void reset() {
+        this.statistics.clear();
+        this.descriptorParseNanos.clear();
+        this.descriptorCacheHits.reset();
+        this.classLoadLockWaits.reset();
+        this.classLoadLockWaitNanos.reset();
+    }
+
+    // Slowest extensions first
+    public @NotNull String getSummary() {
+        List<Map.Entry<String, Statistics>> entries = new ArrayList<>(this.statistics.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<String, Statistics> entry) -> entry.getValue().getLoadNanos()).reversed());
+
+        long parseNanos = this.descriptorParseNanos.values().stream().mapToLong(Long::longValue).sum();
+
+        StringBuilder builder = new StringBuilder();
+        builder.append("Descriptors: %d parsed in %.2f ms (%d from cache)%n".formatted(this.descriptorParseNanos.size(), millis(parseNanos), this.descriptorCacheHits.sum()));
+        builder.append("Class name lock waits: %d, %.2f ms total%n".formatted(this.classLoadLockWaits.sum(), millis(this.classLoadLockWaitNanos.sum())));
+        builder.append("%-32s %10s %10s %10s %10s %8s %10s %12s %12s %10s %10s %12s%n".formatted("Extension", "load ms", "loader ms", "init ms", "ctor ms", "classes", "KiB read", "find hit/miss", "cross hit/miss", "preloaded", "preload ms", "lock wait ms"));
+
+        for (Map.Entry<String, Statistics> entry : entries) {
+            Statistics statistics = entry.getValue();
+            builder.append("%-32s %10.2f %10.2f %10.2f %10.2f %8d %10.1f %13s %14s %10d %10.2f %12.2f%n".formatted(
+                    entry.getKey(),
+                    millis(statistics.getLoadNanos()),
+                    millis(statistics.classLoaderCreationNanos),
+                    millis(statistics.mainClassInitNanos),
+                    millis(statistics.constructorNanos),
+                    statistics.getClassesDefined(),
+                    statistics.getBytesRead() / 1024D,
+                    statistics.getFindClassHits() + "/" + statistics.getFindClassMisses(),
+                    statistics.getCrossExtensionHits() + "/" + statistics.getCrossExtensionMisses(),
+                    statistics.preloadedClasses,
+                    millis(statistics.preloadNanos),
+                    millis(statistics.getLockWaitNanos())
+            ));
+        }
+
+        return builder.toString();
+    }
+
+    private Statistics getOrCreateStatistics(String extension) {
+        return this.statistics.computeIfAbsent(extension, (x) -> new Statistics());
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public static final class Statistics {
+
+        private volatile long classLoaderCreationNanos;
+        private volatile long mainClassInitNanos;
+        private volatile long constructorNanos;
+        private volatile int preloadedClasses;
+        private volatile long preloadNanos;
+
+        private final LongAdder classesDefined = new LongAdder();
+        private final LongAdder bytesRead = new LongAdder();
+        private final LongAdder findClassHits = new LongAdder();
+        private final LongAdder findClassMisses = new LongAdder();
+        private final LongAdder crossExtensionHits = new LongAdder();
+        private final LongAdder crossExtensionMisses = new LongAdder();
+        private final LongAdder lockWaits = new LongAdder();
+        private final LongAdder lockWaitNanos = new LongAdder();
+
+        private Statistics() {
+        }
+
+        public long getLoadNanos() {
+            return this.classLoaderCreationNanos + this.mainClassInitNanos + this.constructorNanos;
+        }
+
+        public long getClassLoaderCreationNanos() {
+            return this.classLoaderCreationNanos;
+        }
+
+        public long getMainClassInitNanos() {
+            return this.mainClassInitNanos;
+        }
+
+        public long getConstructorNanos() {
+            return this.constructorNanos;
+        }
+
+        public int getPreloadedClasses() {
+            return this.preloadedClasses;
+        }
+
+        public long getPreloadNanos() {
+            return this.preloadNanos;
+        }
+
+        public long getClassesDefined() {
+            return this.classesDefined.sum();
+        }
+
+        public long getBytesRead() {
+            return this.bytesRead.sum();
+        }
+
+        public long getFindClassHits() {
+            return this.findClassHits.sum();
+        }
+
+        public long getFindClassMisses() {
+            return this.findClassMisses.sum();
+        }
+
+        public long getCrossExtensionHits() {
+            return this.crossExtensionHits.sum();
+        }
+
+        public long getCrossExtensionMisses() {
+            return this.crossExtensionMisses.sum();
+        }
+
+        public long getLockWaits() {
+            return this.lockWaits.sum();
+        }
+
+        public long getLockWaitNanos() {
+            return this.lockWaitNanos.sum();
+        }
+    }
+}
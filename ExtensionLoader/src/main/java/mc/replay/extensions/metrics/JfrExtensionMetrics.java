@@ -0,0 +1,199 @@
+package mc.replay.extensions.metrics;
+
+import jdk.jfr.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+
+// Per-class events are disabled by default, enable them in the recording settings when needed
+public final class JfrExtensionMetrics implements ExtensionMetricsListener {
+
+    @Override
+    public void descriptorParsed(@NotNull File file, long nanos, boolean cached) {
+        DescriptorParsedEvent event = new DescriptorParsedEvent();
+        if (!event.isEnabled()) return;
+
+        event.file = file.getName();
+        event.cached = cached;
+        event.duration = nanos;
+        event.commit();
+    }
+
+    @Override
+    public void classLoaderCreated(@NotNull String extension, long nanos) {
+        this.loadPhase(extension, "class loader", nanos);
+    }
+
+    @Override
+    public void mainClassInitialized(@NotNull String extension, long nanos) {
+        this.loadPhase(extension, "main class init", nanos);
+    }
+
+    @Override
+    public void extensionConstructed(@NotNull String extension, long nanos) {
+        this.loadPhase(extension, "constructor", nanos);
+    }
+
+    @Override
+    public void classDefined(@NotNull String extension, @NotNull String className, int bytes) {
+        ClassDefinedEvent event = new ClassDefinedEvent();
+        if (!event.isEnabled()) return;
+
+        event.extension = extension;
+        event.className = className;
+        event.bytes = bytes;
+        event.commit();
+    }
+
+    @Override
+    public void crossExtensionLookup(@Nullable String requester, @NotNull String className, boolean found) {
+        CrossExtensionLookupEvent event = new CrossExtensionLookupEvent();
+        if (!event.isEnabled()) return;
+
+        event.requester = requester;
+        event.className = className;
+        event.found = found;
+        event.commit();
+    }
+
+    @Override
+    public void classesPreloaded(@NotNull String extension, int classes, int failed, long nanos) {
+        PreloadEvent event = new PreloadEvent();
+        if (!event.isEnabled()) return;
+
+        event.extension = extension;
+        event.classes = classes;
+        event.failed = failed;
+        event.duration = nanos;
+        event.commit();
+    }
+
+    @Override
+    public void classLoadLockWait(@Nullable String extension, @NotNull String className, long nanos) {
+        ClassLoadLockWaitEvent event = new ClassLoadLockWaitEvent();
+        if (!event.isEnabled()) return;
+
+        event.extension = extension;
+        event.className = className;
+        event.duration = nanos;
+        event.commit();
+    }
+
+    private void loadPhase(String extension, String phase, long nanos) {
+        LoadPhaseEvent event = new LoadPhaseEvent();
+        if (!event.isEnabled()) return;
+
+        event.extension = extension;
+        event.phase = phase;
+        event.duration = nanos;
+        event.commit();
+    }
+
+    @Name("mc.replay.extensions.DescriptorParsed")
+    @Label("Extension Descriptor Parsed")
+    @Category({"MC-Replay", "Extensions"})
+    @StackTrace(false)
+    static final class DescriptorParsedEvent extends Event {
+
+        @Label("File")
+        String file;
+
+        @Label("From Cache")
+        boolean cached;
+
+        @Label("Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long duration;
+    }
+
+    @Name("mc.replay.extensions.LoadPhase")
+    @Label("Extension Load Phase")
+    @Category({"MC-Replay", "Extensions"})
+    @StackTrace(false)
+    static final class LoadPhaseEvent extends Event {
+
+        @Label("Extension")
+        String extension;
+
+        @Label("Phase")
+        String phase;
+
+        @Label("Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long duration;
+    }
+
+    @Name("mc.replay.extensions.ClassDefined")
+    @Label("Extension Class Defined")
+    @Category({"MC-Replay", "Extensions"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ClassDefinedEvent extends Event {
+
+        @Label("Extension")
+        String extension;
+
+        @Label("Class")
+        String className;
+
+        @Label("Bytes")
+        @DataAmount
+        int bytes;
+    }
+
+    @Name("mc.replay.extensions.CrossExtensionLookup")
+    @Label("Cross Extension Class Lookup")
+    @Category({"MC-Replay", "Extensions"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class CrossExtensionLookupEvent extends Event {
+
+        @Label("Requester")
+        String requester;
+
+        @Label("Class")
+        String className;
+
+        @Label("Found")
+        boolean found;
+    }
+
+    @Name("mc.replay.extensions.Preload")
+    @Label("Extension Classes Preloaded")
+    @Category({"MC-Replay", "Extensions"})
+    @StackTrace(false)
+    static final class PreloadEvent extends Event {
+
+        @Label("Extension")
+        String extension;
+
+        @Label("Classes")
+        int classes;
+
+        @Label("Failed")
+        int failed;
+
+        @Label("Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long duration;
+    }
+
+    @Name("mc.replay.extensions.ClassLoadLockWait")
+    @Label("Extension Class Name Lock Wait")
+    @Category({"MC-Replay", "Extensions"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ClassLoadLockWaitEvent extends Event {
+
+        @Label("Extension")
+        String extension;
+
+        @Label("Class")
+        String className;
+
+        @Label("Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long duration;
+    }
+}
@@ -0,0 +1,56 @@
+package mc.replay.extensions.profiler;
+
+import org.jetbrains.annotations.NotNull;
+
+public final class MethodProfile {
+
+    private final String extension;
+    private final String className;
+    private final String method;
+    private final long invocations;
+    private final long totalNanos;
+
+    MethodProfile(@NotNull String extension, @NotNull String className, @NotNull String method, long invocations, long totalNanos) {
+        this.extension = extension;
+        this.className = className;
+        this.method = method;
+        this.invocations = invocations;
+        this.totalNanos = totalNanos;
+    }
+
+    public @NotNull String getExtension() {
+        return this.extension;
+    }
+
+    public @NotNull String getClassName() {
+        return this.className;
+    }
+
+    // Name followed by the descriptor, 'compute(I)I'
+    public @NotNull String getMethod() {
+        return this.method;
+    }
+
+    public long getInvocations() {
+        return this.invocations;
+    }
+
+    // Including the time spent in methods it calls
+    public long getTotalNanos() {
+        return this.totalNanos;
+    }
+
+    public long getAverageNanos() {
+        return (this.invocations > 0) ? this.totalNanos / this.invocations : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "MethodProfile{" +
+                "extension=" + this.extension +
+                ", method=" + this.className + "." + this.method +
+                ", invocations=" + this.invocations +
+                ", totalNanos=" + this.totalNanos +
+                '}';
+    }
+}
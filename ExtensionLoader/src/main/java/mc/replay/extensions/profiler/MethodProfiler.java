@@ -0,0 +1,78 @@
+package mc.replay.extensions.profiler;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.invoke.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters for methods instrumented by MethodProfilerTransformer. Instrumented code reaches them through invokedynamic,
+// so a call site is bound to its counter once and cached class bytes don't depend on ids handed out in an earlier run.
+public final class MethodProfiler {
+
+    private static final Map<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+    private static final MethodHandle RECORD;
+
+    static {
+        try {
+            RECORD = MethodHandles.lookup().findVirtual(Counter.class, "record", MethodType.methodType(void.class, long.class));
+        } catch (ReflectiveOperationException exception) {
+            throw new ExceptionInInitializerError(exception);
+        }
+    }
+
+    private MethodProfiler() {
+    }
+
+    // Highest total time first
+    public static @NotNull List<MethodProfile> getProfiles() {
+        List<MethodProfile> profiles = new ArrayList<>(COUNTERS.size());
+        for (Counter counter : COUNTERS.values()) {
+            long invocations = counter.invocations.sum();
+            if (invocations == 0) continue;
+
+            profiles.add(new MethodProfile(counter.extension, counter.className, counter.method, invocations, counter.nanos.sum()));
+        }
+
+        profiles.sort(Comparator.comparingLong(MethodProfile::getTotalNanos).reversed());
+        return profiles;
+    }
+
+    public static @NotNull List<MethodProfile> getProfiles(@NotNull String extension) {
+        return getProfiles().stream().filter((profile) -> profile.getExtension().equalsIgnoreCase(extension)).toList();
+    }
+
+    public static void reset() {
+        for (Counter counter : COUNTERS.values()) {
+            counter.invocations.reset();
+            counter.nanos.reset();
+        }
+    }
+
+    // Bootstrap method of the instrumented call sites, not meant to be called directly
+    public static CallSite bootstrap(MethodHandles.Lookup lookup, String name, MethodType type, String extension, String className, String method) {
+        Counter counter = COUNTERS.computeIfAbsent(extension + '\n' + className + '\n' + method, (key) -> new Counter(extension, className, method));
+        return new ConstantCallSite(RECORD.bindTo(counter).asType(type));
+    }
+
+    private static final class Counter {
+
+        private final String extension;
+        private final String className;
+        private final String method;
+        private final LongAdder invocations = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        private Counter(String extension, String className, String method) {
+            this.extension = extension;
+            this.className = className;
+            this.method = method;
+        }
+
+        private void record(long start) {
+            this.nanos.add(System.nanoTime() - start);
+            this.invocations.increment();
+        }
+    }
+}
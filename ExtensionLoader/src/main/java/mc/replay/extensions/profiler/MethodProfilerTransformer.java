@@ -0,0 +1,123 @@
+package mc.replay.extensions.profiler;
+
+import mc.replay.extensions.ExtensionClassTransformer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.*;
+import org.objectweb.asm.commons.AdviceAdapter;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Collection;
+import java.util.List;
+
+// Counts invocations and time of every method of the matching extensions, read them with MethodProfiler.getProfiles().
+// Needs org.ow2.asm:asm-commons on the class path. Calls that end with an exception thrown by a callee are not recorded.
+public final class MethodProfilerTransformer implements ExtensionClassTransformer {
+
+    private static final Handle BOOTSTRAP = new Handle(
+            Opcodes.H_INVOKESTATIC,
+            Type.getInternalName(MethodProfiler.class),
+            "bootstrap",
+            MethodType.methodType(CallSite.class, MethodHandles.Lookup.class, String.class, MethodType.class, String.class, String.class, String.class).toMethodDescriptorString(),
+            false
+    );
+
+    private final Collection<String> extensions;
+    private final List<String> packages;
+
+    public MethodProfilerTransformer() {
+        this(List.of(), List.of());
+    }
+
+    public MethodProfilerTransformer(@NotNull Collection<String> extensions, @NotNull List<String> packages) {
+        this.extensions = List.copyOf(extensions);
+        this.packages = List.copyOf(packages);
+    }
+
+    @Override
+    public @NotNull String getName() {
+        return "method-profiler";
+    }
+
+    @Override
+    public @NotNull String getVersion() {
+        return "1";
+    }
+
+    @Override
+    public @NotNull Collection<String> getExtensions() {
+        return this.extensions;
+    }
+
+    @Override
+    public @NotNull List<String> getPackages() {
+        return this.packages;
+    }
+
+    @Override
+    public byte @Nullable [] transform(@NotNull String extensionName, @NotNull String className, byte @NotNull [] classBytes) {
+        ClassReader reader = new ClassReader(classBytes);
+
+        // invokedynamic needs class files from Java 7 on
+        if ((reader.readUnsignedShort(6) & 0xFFFF) < (Opcodes.V1_7 & 0xFFFF)) return null;
+
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        reader.accept(new ProfilingClassVisitor(writer, extensionName, className), ClassReader.EXPAND_FRAMES);
+        return writer.toByteArray();
+    }
+
+    private static final class ProfilingClassVisitor extends ClassVisitor {
+
+        private final String extensionName;
+        private final String className;
+
+        private ProfilingClassVisitor(ClassVisitor classVisitor, String extensionName, String className) {
+            super(Opcodes.ASM9, classVisitor);
+
+            this.extensionName = extensionName;
+            this.className = className;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            MethodVisitor methodVisitor = super.visitMethod(access, name, descriptor, signature, exceptions);
+            if ((access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) != 0 || name.equals("<clinit>")) return methodVisitor;
+
+            return new ProfilingMethodVisitor(methodVisitor, access, name, descriptor, this.extensionName, this.className);
+        }
+    }
+
+    private static final class ProfilingMethodVisitor extends AdviceAdapter {
+
+        private final String extensionName;
+        private final String className;
+        private final String method;
+
+        private int start;
+
+        private ProfilingMethodVisitor(MethodVisitor methodVisitor, int access, String name, String descriptor, String extensionName, String className) {
+            super(Opcodes.ASM9, methodVisitor, access, name, descriptor);
+
+            this.extensionName = extensionName;
+            this.className = className;
+            this.method = name + descriptor;
+        }
+
+        // Constructors get here after their super() call
+        @Override
+        protected void onMethodEnter() {
+            this.invokeStatic(Type.getType(System.class), new org.objectweb.asm.commons.Method("nanoTime", "()J"));
+            this.start = this.newLocal(Type.LONG_TYPE);
+            this.storeLocal(this.start);
+        }
+
+        // Returns and explicit throws, whatever is on the stack stays untouched
+        @Override
+        protected void onMethodExit(int opcode) {
+            this.loadLocal(this.start);
+            this.invokeDynamic("record", "(J)V", BOOTSTRAP, this.extensionName, this.className, this.method);
+        }
+    }
+}